@@ -1,43 +1,141 @@
-import java.util.Iterator;
-import java.util.List;
-import java.util.Random;
-
 /**
- * Common elements of foxes and rabbits.
+ * An animal of any species. Animals age, move, breed and die, and
+ * predators hunt and starve; how fast, and what they eat, is looked up
+ * in their Species, so every animal runs this one piece of code.
+ *
+ * Animals that have died or left the field are recycled for births
+ * (see Field.obtainAnimal), so an animal object may be reused as a
+ * new animal of the same species.
  *
  * @author David J. Barnes and Michael Kölling
- * @version 7.0
+ * @version 7.1
  */
-public abstract class Animal
+public final class Animal
 {
+    // The animal's species.
+    private final Species species;
     // Whether the animal is alive or not.
     private boolean alive;
-    // The animal's position.
-    private Location location;
-    
-    private String gender;
+    // The animal's position, as a cell index in the field.
+    private int cell;
+    // Whether the animal is male.
+    private boolean male;
+    // The animal's age.
+    private int age;
+    // The number of steps the animal can go before it has to eat again
+    // (predators only).
+    private int foodLevel;
+    // The generation of the field the animal was last placed in.
+    private int generation;
+
+    /**
+     * Create an animal. An animal may be created with age zero (a new
+     * born) or with a random age.
+     * @param species The animal's species.
+     * @param randomAge If true, the animal will have a random age.
+     * @param cell The animal's cell index in the field.
+     * @param rand The random number generator used to pick its gender and age.
+     */
+    public Animal(Species species, boolean randomAge, int cell, RandomStream rand)
+    {
+        this.species = species;
+        initialise(randomAge, cell, rand);
+    }
+
+    /**
+     * Make this object a new animal of the same species, as if it had
+     * just been created with the same arguments. The random numbers
+     * drawn are the same as the constructor's.
+     * @param randomAge If true, the animal will have a random age.
+     * @param cell The animal's cell index in the field.
+     * @param rand The random number generator used to pick its gender and age.
+     */
+    void initialise(boolean randomAge, int cell, RandomStream rand)
+    {
+        alive = true;
+        this.cell = cell;
+        male = rand.nextInt(2) == 1;
+        age = randomAge ? rand.nextInt(species.getMaxAge()) : 0;
+        foodLevel = species.getInitialFoodLevel();
+    }
 
     /**
-     * Constructor for objects of class Animal.
-     * @param location The animal's location.
+     * Recreate a live animal in a given state, e.g. from a snapshot.
+     * @param species The animal's species.
+     * @param cell The animal's cell index in the field.
+     * @param male Whether the animal is male.
+     * @param age The animal's age.
+     * @param foodLevel The number of steps the animal can go before it
+     *                  has to eat again.
      */
-    public Animal(Location location)
+    Animal(Species species, int cell, boolean male, int age, int foodLevel)
     {
+        this.species = species;
         this.alive = true;
-        this.location = location;
-        this.gender = randomGender();
+        this.cell = cell;
+        this.male = male;
+        this.age = age;
+        this.foodLevel = foodLevel;
     }
-    
-    
-    
+
     /**
-     * Act.
+     * This is what the animal does each step: it ages and, if it eats,
+     * gets hungrier. Unless it is asleep, it may then breed, look for
+     * food and move. It may die of old age, hunger or overcrowding.
      * @param currentField The current state of the field.
      * @param nextFieldState The new state being built.
-     * @param timeOfDay The current time of day.
+     * @param conditions The current time of day and tide.
+     * @param context Scratch space and random numbers for the acting thread.
      */
-    abstract public void act(Field currentField, Field nextFieldState, Conditions conditions);
-    
+    public void act(Field currentField, Field nextFieldState, Conditions conditions,
+                    StepContext context)
+    {
+        incrementAge();
+        if(species.isPredator()) {
+            incrementHunger();
+        }
+        if(!alive) {
+            return;
+        }
+        if(species.sleepsAtNight() && conditions.isNight()) {
+            // Asleep: stay put.
+            nextFieldState.placeAnimal(this, cell);
+            return;
+        }
+        int[] freeCells = context.getFreeCells();
+        int free = nextFieldState.getFreeAdjacentCells(cell, freeCells);
+        if(free > 0) {
+            free = giveBirth(currentField, nextFieldState, free, context);
+        }
+        // Move towards a source of food if found.
+        int nextCell = Field.NO_CELL;
+        if(species.isPredator()) {
+            nextCell = findFood(currentField, nextFieldState, conditions, context);
+        }
+        if(nextCell == Field.NO_CELL && free > 0) {
+            // No food found - try to move to a free location.
+            nextCell = context.takeRandomCell(freeCells, free);
+        }
+        // See if it was possible to move.
+        if(nextCell != Field.NO_CELL) {
+            cell = nextCell;
+            nextFieldState.placeAnimal(this, nextCell);
+        }
+        else {
+            // Overcrowding.
+            setDead();
+        }
+    }
+
+    /**
+     * Return the species of the animal.
+     * @return The animal's species.
+     */
+    public Species getSpecies()
+    {
+        return species;
+    }
+
     /**
      * Check whether the animal is alive or not.
      * @return true if the animal is still alive.
@@ -46,63 +144,188 @@ public abstract class Animal
     {
         return alive;
     }
-    
-    private String randomGender(){
-        String[] genders = { "female" , "male" };
-        Random rand = new Random();
-        return genders[rand.nextInt(2)];
-
-    }
 
     /**
      * Indicate that the animal is no longer alive.
      */
-    protected void setDead()
+    void setDead()
     {
         alive = false;
-        location = null;
+        cell = Field.NO_CELL;
     }
-    
+
     /**
-     * Return the animal's location.
-     * @return The animal's location.
+     * Record that the animal has been placed in a field.
+     * @param fieldGeneration The field's current generation.
      */
-    public Location getLocation()
+    void setGeneration(int fieldGeneration)
     {
-        return location;
+        generation = fieldGeneration;
     }
-    
+
     /**
-     * Set the animal's location.
-     * @param location The new location.
+     * @return The generation of the field the animal was last placed in.
      */
-    protected void setLocation(Location location)
+    int getGeneration()
     {
-        this.location = location;
+        return generation;
     }
-    
-    protected boolean isMale(){
-        return gender.equals("male");
+
+    /**
+     * Return the animal's cell index in the field.
+     * @return The animal's cell, or Field.NO_CELL if it is dead.
+     */
+    public int getCell()
+    {
+        return cell;
     }
+
     /**
-     * This ensures that animal can only breed if it is of the same species,
-     * also if the animals are next to each other and one of them is male.
-     * 
+     * @return Whether the animal is male.
      */
-    public <E> boolean canBreed(Field field, Class<E> type )
+    public boolean isMale()
     {
-        List<Location> adjacent = field.getAdjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        Location partnerLocation = null;
-        while(partnerLocation == null && it.hasNext()) {
-            Location loc = it.next();
-            Animal animal = field.getAnimalAt(loc);
-            if(type.isInstance(animal) && animal.isAlive() && animal.isMale()) {
-                return true;
+        return male;
+    }
 
-            }
+    /**
+     * @return The animal's age.
+     */
+    public int getAge()
+    {
+        return age;
+    }
 
+    /**
+     * @return The number of steps the animal can go before it has to eat
+     *         again (zero for animals that do not eat).
+     */
+    public int getFoodLevel()
+    {
+        return foodLevel;
+    }
+
+    /**
+     * Return whether the animal can breed: it must be a female of
+     * breeding age with a live male of its species next to it. Only
+     * the cells the field's occupancy bits show holding a male of the
+     * species are looked at.
+     * @param field The field the animal is in.
+     * @param context Scratch space for the acting thread.
+     * @return true if the animal can breed.
+     */
+    public boolean canBreed(Field field, StepContext context)
+    {
+        if(age < species.getBreedingAge() || male) {
+            return false;
+        }
+        int[] males = context.getNearbyCells();
+        int count = field.getAdjacentMales(cell, species, males);
+        for(int i = 0; i < count; i++) {
+            if(field.getAnimalAt(males[i]).alive) {
+                return true;
+            }
         }
         return false;
     }
+
+    @Override
+    public String toString()
+    {
+        return species.getDisplayName() + "{" +
+        "age=" + age +
+        ", alive=" + alive +
+        ", cell=" + cell +
+        ", foodLevel=" + foodLevel +
+        '}';
+    }
+
+    /**
+     * Increase the age. This could result in the animal's death.
+     */
+    private void incrementAge()
+    {
+        age++;
+        if(age > species.getMaxAge()) {
+            setDead();
+        }
+    }
+
+    /**
+     * Make this animal more hungry. This could result in its death.
+     */
+    private void incrementHunger()
+    {
+        foodLevel--;
+        if(foodLevel <= 0) {
+            setDead();
+        }
+    }
+
+    /**
+     * Check whether or not this animal is to give birth at this step.
+     * New births will be made into free adjacent cells.
+     * @param free The number of free cells in the context's freeCells.
+     * @return The number of free cells left after the births.
+     */
+    private int giveBirth(Field currentField, Field nextFieldState, int free, StepContext context)
+    {
+        int[] freeCells = context.getFreeCells();
+        int births = breed(currentField, context);
+        for(int b = 0; b < births && free > 0; b++) {
+            int birthCell = context.takeRandomCell(freeCells, free--);
+            Animal young = nextFieldState.obtainAnimal(species, birthCell, context.getRandom());
+            nextFieldState.placeAnimal(young, birthCell);
+        }
+        return free;
+    }
+
+    /**
+     * Generate a number representing the number of births,
+     * if it can breed.
+     * @return The number of births (may be zero).
+     */
+    private int breed(Field currentField, StepContext context)
+    {
+        RandomStream rand = context.getRandom();
+        if(canBreed(currentField, context) && rand.nextDouble() <= species.getBreedingProbability()) {
+            return rand.nextInt(species.getMaxLitterSize()) + 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Look for prey adjacent to the current cell and eat the first live
+     * one found. A prey the species' rival also eats is only won when no
+     * rival is next to it, or with the species' win probability, which
+     * depends on the tide.
+     * @param field The field currently occupied.
+     * @param nextFieldState The updated field, where eaten prey that
+     *                       have already moved are no longer counted.
+     * @return The cell where food was found, or Field.NO_CELL if it wasn't.
+     */
+    private int findFood(Field field, Field nextFieldState, Conditions conditions,
+                         StepContext context)
+    {
+        int[] adjacentCells = context.getAdjacentCells();
+        int remaining = field.getAdjacentCells(cell, adjacentCells);
+        double winProbability = species.getWinProbability(conditions.isHighTide());
+        while(remaining > 0) {
+            int preyCell = context.takeRandomCell(adjacentCells, remaining--);
+            Animal prey = field.getAnimalAt(preyCell);
+            if(prey != null && prey.alive) {
+                int preyCode = prey.species.getCode();
+                int foodValue = species.getFoodValue(preyCode);
+                if(foodValue > 0
+                   && (!species.isContested(preyCode)
+                       || !field.isSpeciesAdjacent(preyCell, species.getRival())
+                       || context.getRandom().nextDouble() < winProbability)) {
+                    nextFieldState.killAnimal(prey);
+                    foodLevel += foodValue;
+                    return preyCell;
+                }
+            }
+        }
+        return Field.NO_CELL;
+    }
 }
@@ -0,0 +1,357 @@
+import java.awt.GraphicsEnvironment;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Microbenchmarks for the hot paths of the simulation: neighbourhood
+ * queries, placement, breeding checks, each species' act, whole steps,
+ * population and rendering. Each benchmark runs at several field sizes
+ * and, where the population can be chosen, several densities, and
+ * reports throughput and the bytes allocated per operation.
+ *
+ * Every benchmark is warmed up before it is measured, and its results
+ * are fed to a sink so the JIT cannot discard the work. Set-up that
+ * restores the state an operation consumes (e.g. repopulating a field
+ * before its animals act again) is not timed and its allocation is not
+ * counted.
+ *
+ * Run with: java Benchmarks [--sizes 80x120,200x300] [--densities 0.1,0.5]
+ *           [--iterations n] [--time ms] [--filter name]
+ *
+ * @version 7.1
+ */
+public class Benchmarks
+{
+    // Field sizes run by default, as depth x width.
+    private static final String DEFAULT_SIZES = "80x120,200x300,500x750";
+    // Fractions of cells occupied, run by default where they apply.
+    private static final String DEFAULT_DENSITIES = "0.1,0.3,0.6";
+    // Warm-up and measured iterations of each benchmark.
+    private static final int DEFAULT_ITERATIONS = 5;
+    // The minimum duration of one iteration, in milliseconds.
+    private static final int DEFAULT_ITERATION_TIME = 500;
+    // The seed for every benchmark's populations.
+    private static final long SEED = Randomizer.SEED;
+    // The species benchmarked.
+    private static final SpeciesTable SPECIES = SpeciesTable.getDefault();
+
+    // Results are folded in here so the work cannot be optimised away.
+    private static volatile long sink;
+
+    // The number of warm-up and of measured iterations.
+    private final int iterations;
+    // The minimum duration of one iteration, in nanoseconds.
+    private final long iterationTime;
+    // The thread allocation counter, or null where it is unavailable.
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Run the benchmarks selected on the command line.
+     * @param args The command line options.
+     */
+    public static void main(String[] args)
+    {
+        String sizes = DEFAULT_SIZES;
+        String densities = DEFAULT_DENSITIES;
+        int iterations = DEFAULT_ITERATIONS;
+        int time = DEFAULT_ITERATION_TIME;
+        String filter = "";
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            switch(args[i]) {
+                case "--sizes" -> sizes = args[i + 1];
+                case "--densities" -> densities = args[i + 1];
+                case "--iterations" -> iterations = Integer.parseInt(args[i + 1]);
+                case "--time" -> time = Integer.parseInt(args[i + 1]);
+                case "--filter" -> filter = args[i + 1];
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        Benchmarks benchmarks = new Benchmarks(iterations, time);
+        System.out.printf("%-36s %10s %8s %16s %12s%n",
+                          "Benchmark", "Size", "Density", "ops/s", "B/op");
+        for(String size : sizes.split(",")) {
+            String[] dimensions = size.split("x");
+            int depth = Integer.parseInt(dimensions[0]);
+            int width = Integer.parseInt(dimensions[1]);
+            for(Case benchmark : simulatorCases(depth, width)) {
+                if(benchmark.name.contains(filter)) {
+                    benchmarks.run(benchmark, size, "-");
+                }
+            }
+            for(String density : densities.split(",")) {
+                double fraction = Double.parseDouble(density);
+                for(Case benchmark : fieldCases(depth, width, fraction)) {
+                    if(benchmark.name.contains(filter)) {
+                        benchmarks.run(benchmark, size, density);
+                    }
+                }
+            }
+        }
+        if(sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Create a harness.
+     * @param iterations The number of warm-up and of measured iterations.
+     * @param time The minimum duration of one iteration, in milliseconds.
+     */
+    public Benchmarks(int iterations, int time)
+    {
+        this.iterations = iterations;
+        this.iterationTime = time * 1_000_000L;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean counter
+           && counter.isThreadAllocatedMemorySupported()) {
+            counter.setThreadAllocatedMemoryEnabled(true);
+            threads = counter;
+        }
+        else {
+            threads = null;
+        }
+    }
+
+    /**
+     * Warm up and measure one benchmark, and print its results.
+     * @param benchmark The benchmark.
+     * @param size The field size, for the report.
+     * @param density The field density, for the report.
+     */
+    public void run(Case benchmark, String size, String density)
+    {
+        for(int i = 0; i < iterations; i++) {
+            measure(benchmark);
+        }
+        double[] rates = new double[iterations];
+        double bytes = 0;
+        for(int i = 0; i < iterations; i++) {
+            double[] result = measure(benchmark);
+            rates[i] = result[0];
+            bytes += result[1];
+        }
+        double mean = 0;
+        for(double rate : rates) {
+            mean += rate / iterations;
+        }
+        double variance = 0;
+        for(double rate : rates) {
+            variance += (rate - mean) * (rate - mean) / Math.max(1, iterations - 1);
+        }
+        String allocation = threads == null ? "n/a" : String.format("%.1f", bytes / iterations);
+        System.out.printf("%-36s %10s %8s %16s %12s%n", benchmark.name, size, density,
+                          String.format("%.0f +- %.0f", mean, Math.sqrt(variance)),
+                          allocation);
+    }
+
+    /**
+     * Run a benchmark for one iteration.
+     * @return The operations per second and the bytes allocated per
+     *         operation.
+     */
+    private double[] measure(Case benchmark)
+    {
+        long elapsed = 0;
+        long allocated = 0;
+        long operations = 0;
+        long id = Thread.currentThread().getId();
+        while(elapsed < iterationTime) {
+            benchmark.operation.setUp();
+            long bytesBefore = threads == null ? 0 : threads.getThreadAllocatedBytes(id);
+            long start = System.nanoTime();
+            operations += benchmark.operation.run();
+            elapsed += System.nanoTime() - start;
+            if(threads != null) {
+                allocated += threads.getThreadAllocatedBytes(id) - bytesBefore;
+            }
+        }
+        return new double[] {
+            operations / (elapsed / 1e9), (double) allocated / operations
+        };
+    }
+
+    /**
+     * Return the benchmarks of whole simulations, whose density is set
+     * by the simulator's creation probabilities.
+     */
+    private static List<Case> simulatorCases(int depth, int width)
+    {
+        List<Case> cases = new ArrayList<>();
+        Simulator stepping = new Simulator(depth, width, false, SEED);
+        cases.add(new Case("Simulator.simulateOneStep", new Operation() {
+            public void setUp()
+            {
+                // Keep the population near its starting density.
+                if(stepping.getStep() % 50 == 0) {
+                    stepping.reset();
+                }
+            }
+
+            public long run()
+            {
+                stepping.simulateOneStep();
+                return 1;
+            }
+        }));
+        Simulator populating = new Simulator(depth, width, false, SEED);
+        cases.add(new Case("Simulator.populate", () -> {
+            populating.reset();
+            return 1;
+        }));
+        if(!GraphicsEnvironment.isHeadless()) {
+            Simulator shown = new Simulator(depth, width, false, SEED);
+            SimulatorView view = new SimulatorView(depth, width);
+            cases.add(new Case("SimulatorView.showStatus", () -> {
+                view.showStatus(shown.getStep(), shown.getField());
+                return 1;
+            }));
+        }
+        return cases;
+    }
+
+    /**
+     * Return the benchmarks run on a field filled to the given density.
+     */
+    private static List<Case> fieldCases(int depth, int width, double density)
+    {
+        List<Case> cases = new ArrayList<>();
+        Field field = new Field(depth, width);
+        populate(field, density);
+        int cellCount = field.getCellCount();
+        Location[] locations = new Location[cellCount];
+        for(int cell = 0; cell < cellCount; cell++) {
+            locations[cell] = field.locationOf(cell);
+        }
+
+        cases.add(new Case("Field.getAdjacentLocations", () -> {
+            long total = 0;
+            for(Location location : locations) {
+                total += field.getAdjacentLocations(location).size();
+            }
+            sink += total;
+            return cellCount;
+        }));
+        cases.add(new Case("Field.getFreeAdjacentLocations", () -> {
+            long total = 0;
+            for(Location location : locations) {
+                total += field.getFreeAdjacentLocations(location).size();
+            }
+            sink += total;
+            return cellCount;
+        }));
+
+        List<Animal> animals = new ArrayList<>(field.getAnimals());
+        Field target = new Field(depth, width);
+        cases.add(new Case("Field.placeAnimal", new Operation() {
+            public void setUp()
+            {
+                target.clear();
+            }
+
+            public long run()
+            {
+                for(Animal animal : animals) {
+                    target.placeAnimal(animal, animal.getCell());
+                }
+                return animals.size();
+            }
+        }));
+
+        StepContext context = new StepContext(SEED);
+        cases.add(new Case("Animal.canBreed", () -> {
+            long total = 0;
+            for(Animal animal : animals) {
+                if(animal.canBreed(field, context)) {
+                    total++;
+                }
+            }
+            sink += total;
+            return animals.size();
+        }));
+
+        for(Species species : SPECIES.getAll()) {
+            cases.add(actCase(depth, width, density, species));
+        }
+        return cases;
+    }
+
+    /**
+     * Return a benchmark of every animal of one species acting once.
+     * The field is repopulated before each operation, as acting ages,
+     * moves and kills animals.
+     */
+    private static Case actCase(int depth, int width, double density, Species species)
+    {
+        Field current = new Field(depth, width);
+        Field next = new Field(depth, width);
+        Conditions conditions = new Conditions();
+        StepContext context = new StepContext(SEED);
+        List<Animal> actors = new ArrayList<>();
+        return new Case(species.getDisplayName() + ".act", new Operation() {
+            public void setUp()
+            {
+                current.clear();
+                next.clear();
+                populate(current, density);
+                actors.clear();
+                for(Animal animal : current.getAnimals()) {
+                    if(animal.getSpecies() == species) {
+                        actors.add(animal);
+                    }
+                }
+                context.startStep(1);
+            }
+
+            public long run()
+            {
+                for(Animal animal : actors) {
+                    context.startAct(animal.getCell());
+                    animal.act(current, next, conditions, context);
+                }
+                return Math.max(1, actors.size());
+            }
+        });
+    }
+
+    /**
+     * Fill a field to the given density with an even mix of species.
+     */
+    private static void populate(Field field, double density)
+    {
+        RandomStream rand = new RandomStream(SEED);
+        for(int cell = 0; cell < field.getCellCount(); cell++) {
+            if(rand.nextDouble() < density) {
+                Species species = SPECIES.get(rand.nextInt(SPECIES.size()));
+                field.placeAnimal(new Animal(species, true, cell, rand), cell);
+            }
+        }
+    }
+
+    /**
+     * A named benchmark.
+     */
+    private record Case(String name, Operation operation)
+    {
+    }
+
+    /**
+     * The work measured by a benchmark.
+     */
+    private interface Operation
+    {
+        /**
+         * Prepare for the next run. This is not timed.
+         */
+        default void setUp()
+        {
+        }
+
+        /**
+         * Do the measured work.
+         * @return The number of operations performed.
+         */
+        long run();
+    }
+}
@@ -0,0 +1,104 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A statistics sink writing compact binary records. The stream starts
+ * with the int MAGIC and the number of species, followed by each
+ * species' display name (in modified UTF-8). Each record is then the
+ * step and one count per species, all as big-endian ints, so a run of
+ * n steps takes 4 * (1 + species) * n bytes after the header and
+ * can be read back with a DataInputStream.
+ *
+ * @version 7.1
+ */
+public class BinaryStatsSink implements StatsSink
+{
+    // Identifies a binary statistics stream ("HSS1").
+    public static final int MAGIC = 0x48535331;
+
+    // Where the records go.
+    private final DataOutputStream out;
+    // The number of species counted.
+    private final int speciesCount;
+
+    /**
+     * Create a sink writing to a file, replacing any existing file.
+     * @param file The file to write.
+     * @param speciesTable The species counted.
+     * @throws IOException If the file cannot be created, or the header
+     *                     cannot be written.
+     */
+    public BinaryStatsSink(Path file, SpeciesTable speciesTable) throws IOException
+    {
+        this(Files.newOutputStream(file), speciesTable, true);
+    }
+
+    /**
+     * Create a sink writing to the given stream.
+     * @param out The destination. It is buffered by the sink.
+     * @param speciesTable The species counted.
+     * @throws IOException If the header cannot be written.
+     */
+    public BinaryStatsSink(OutputStream out, SpeciesTable speciesTable) throws IOException
+    {
+        this(out, speciesTable, false);
+    }
+
+    /**
+     * Create a sink and write the header.
+     * @param out The destination. It is buffered by the sink.
+     * @param speciesTable The species counted.
+     * @param owned Whether the sink opened the destination, and so must
+     *              close it if the header cannot be written.
+     * @throws IOException If the header cannot be written.
+     */
+    private BinaryStatsSink(OutputStream out, SpeciesTable speciesTable, boolean owned)
+        throws IOException
+    {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        speciesCount = speciesTable.size();
+        try {
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(speciesCount);
+            for(Species species : speciesTable.getAll()) {
+                this.out.writeUTF(species.getDisplayName());
+            }
+        }
+        catch(IOException | RuntimeException e) {
+            if(owned) {
+                try {
+                    out.close();
+                }
+                catch(IOException closing) {
+                    e.addSuppressed(closing);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Write a record of the step and the count of each species.
+     */
+    public void write(int step, int[] counts) throws IOException
+    {
+        out.writeInt(step);
+        for(int species = 0; species < speciesCount; species++) {
+            out.writeInt(counts[species]);
+        }
+    }
+
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    public void close() throws IOException
+    {
+        out.close();
+    }
+}
@@ -7,7 +7,7 @@ public class Conditions {
     // Fields below
     private static final int DAY_DURATION = 8; 
     private static final int NIGHT_DURATION = 2; 
-    private static boolean highTide = false;
+    private boolean highTide = false;
     private int currentStep;
     
     /**
@@ -17,6 +17,17 @@ public class Conditions {
         this.currentStep = 0; // Start at the beginning of the day
     }
 
+    /**
+     * Create conditions at a given time of day and tide, e.g. to
+     * resume a saved simulation.
+     * @param currentStep The step within the day.
+     * @param highTide Whether the tide is high.
+     */
+    public Conditions(int currentStep, boolean highTide) {
+        this.currentStep = currentStep;
+        this.highTide = highTide;
+    }
+
     /**
      * Advance the time by one step.
      */
@@ -0,0 +1,60 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * A statistics sink printing the population of each species to the
+ * console, one line per recorded step. Lines are buffered and printed
+ * a batch at a time.
+ *
+ * @version 7.1
+ */
+public class ConsoleStatsSink implements StatsSink
+{
+    // Where the lines go.
+    private final Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+    // Reused to build each line.
+    private final StringBuilder line = new StringBuilder();
+    // The species counted.
+    private final SpeciesTable speciesTable;
+
+    /**
+     * Create a sink printing to the console.
+     * @param speciesTable The species counted.
+     */
+    public ConsoleStatsSink(SpeciesTable speciesTable)
+    {
+        this.speciesTable = speciesTable;
+    }
+
+    /**
+     * Print a line such as "Step 10: Salmon: 12 Sardine: 40 ...".
+     */
+    public void write(int step, int[] counts) throws IOException
+    {
+        line.setLength(0);
+        line.append("Step ").append(step).append(':');
+        for(Species species : speciesTable.getAll()) {
+            line.append(' ')
+                .append(species.getDisplayName())
+                .append(": ")
+                .append(counts[species.getCode()]);
+        }
+        line.append(System.lineSeparator());
+        out.append(line);
+    }
+
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    /**
+     * Flush the remaining lines. The console itself stays open.
+     */
+    public void close() throws IOException
+    {
+        out.flush();
+    }
+}
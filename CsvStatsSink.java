@@ -0,0 +1,100 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A statistics sink writing one comma-separated line per recorded step,
+ * after a header line naming the species.
+ *
+ * @version 7.1
+ */
+public class CsvStatsSink implements StatsSink
+{
+    // Where the lines go.
+    private final Writer out;
+    // The number of species counted.
+    private final int speciesCount;
+
+    /**
+     * Create a sink writing to a file, replacing any existing file.
+     * @param file The file to write.
+     * @param speciesTable The species counted.
+     * @throws IOException If the file cannot be created, or the header
+     *                     cannot be written.
+     */
+    public CsvStatsSink(Path file, SpeciesTable speciesTable) throws IOException
+    {
+        this(Files.newBufferedWriter(file, StandardCharsets.UTF_8), speciesTable, true);
+    }
+
+    /**
+     * Create a sink writing to the given writer.
+     * @param out The destination. It is buffered if it is not already.
+     * @param speciesTable The species counted.
+     * @throws IOException If the header cannot be written.
+     */
+    public CsvStatsSink(Writer out, SpeciesTable speciesTable) throws IOException
+    {
+        this(out, speciesTable, false);
+    }
+
+    /**
+     * Create a sink and write the header.
+     * @param out The destination. It is buffered if it is not already.
+     * @param speciesTable The species counted.
+     * @param owned Whether the sink opened the destination, and so must
+     *              close it if the header cannot be written.
+     * @throws IOException If the header cannot be written.
+     */
+    private CsvStatsSink(Writer out, SpeciesTable speciesTable, boolean owned)
+        throws IOException
+    {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out);
+        speciesCount = speciesTable.size();
+        try {
+            this.out.write("step");
+            for(Species species : speciesTable.getAll()) {
+                this.out.write(',');
+                this.out.write(species.getDisplayName());
+            }
+            this.out.write('\n');
+        }
+        catch(IOException | RuntimeException e) {
+            if(owned) {
+                try {
+                    out.close();
+                }
+                catch(IOException closing) {
+                    e.addSuppressed(closing);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Write a line with the step and the count of each species.
+     */
+    public void write(int step, int[] counts) throws IOException
+    {
+        out.write(Integer.toString(step));
+        for(int species = 0; species < speciesCount; species++) {
+            out.write(',');
+            out.write(Integer.toString(counts[species]));
+        }
+        out.write('\n');
+    }
+
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    public void close() throws IOException
+    {
+        out.close();
+    }
+}
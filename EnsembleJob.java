@@ -0,0 +1,91 @@
+/**
+ * One run of an ensemble: a seed, the size of the field, the species
+ * and the number of steps to run for.
+ *
+ * @version 7.1
+ */
+public class EnsembleJob
+{
+    // The seed for the run's random decisions.
+    private final long seed;
+    // The dimensions of the field.
+    private final int depth, width;
+    // The most steps to run for.
+    private final int steps;
+    // The species in the run.
+    private final SpeciesTable speciesTable;
+
+    /**
+     * Describe a run of the default species.
+     * @param seed The seed for the run's random decisions.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param steps The most steps to run for.
+     */
+    public EnsembleJob(long seed, int depth, int width, int steps)
+    {
+        this(seed, depth, width, steps, SpeciesTable.getDefault());
+    }
+
+    /**
+     * Describe a run.
+     * @param seed The seed for the run's random decisions.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param steps The most steps to run for. The run stops early if
+     *              it ceases to be viable.
+     * @param speciesTable The species in the run.
+     */
+    public EnsembleJob(long seed, int depth, int width, int steps, SpeciesTable speciesTable)
+    {
+        if(depth <= 0 || width <= 0 || steps < 0) {
+            throw new IllegalArgumentException("Invalid job: " + depth + " x " + width
+                                               + " for " + steps + " steps");
+        }
+        this.seed = seed;
+        this.depth = depth;
+        this.width = width;
+        this.steps = steps;
+        this.speciesTable = speciesTable;
+    }
+
+    /**
+     * @return The seed for the run's random decisions.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * @return The depth of the field.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the field.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return The most steps to run for.
+     */
+    public int getSteps()
+    {
+        return steps;
+    }
+
+    /**
+     * @return The species in the run.
+     */
+    public SpeciesTable getSpeciesTable()
+    {
+        return speciesTable;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * The outcome of one run of an ensemble: how many steps it ran, the
+ * final population of each species and how long it took.
+ *
+ * @version 7.1
+ */
+public class EnsembleResult
+{
+    // The run.
+    private final EnsembleJob job;
+    // The number of steps completed.
+    private final int stepsRun;
+    // The final number of live animals of each species, by species code.
+    private final int[] finalCounts;
+    // How long the run took, in nanoseconds.
+    private final long elapsedNanos;
+
+    /**
+     * Record the outcome of a run.
+     * @param job The run.
+     * @param stepsRun The number of steps completed.
+     * @param finalCounts The final live counts, indexed by species code.
+     * @param elapsedNanos How long the run took, in nanoseconds.
+     */
+    public EnsembleResult(EnsembleJob job, int stepsRun, int[] finalCounts, long elapsedNanos)
+    {
+        this.job = job;
+        this.stepsRun = stepsRun;
+        this.finalCounts = finalCounts.clone();
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return The run.
+     */
+    public EnsembleJob getJob()
+    {
+        return job;
+    }
+
+    /**
+     * @return The number of steps completed.
+     */
+    public int getStepsRun()
+    {
+        return stepsRun;
+    }
+
+    /**
+     * @return Whether the run completed every step it was asked for
+     *         (rather than stopping when a species died out).
+     */
+    public boolean isComplete()
+    {
+        return stepsRun == job.getSteps();
+    }
+
+    /**
+     * Return the final number of live animals of a species.
+     * @param species The species.
+     * @return The final count.
+     */
+    public int getFinalCount(Species species)
+    {
+        return finalCounts[species.getCode()];
+    }
+
+    /**
+     * @return How long the run took, in nanoseconds.
+     */
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return A CSV line: the seed, the size, the steps run and the
+     *         final count of each species.
+     */
+    public String toCsv()
+    {
+        StringBuilder line = new StringBuilder();
+        line.append(job.getSeed()).append(',')
+            .append(job.getDepth()).append(',')
+            .append(job.getWidth()).append(',')
+            .append(stepsRun);
+        for(int count : finalCounts) {
+            line.append(',').append(count);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Return the header line matching toCsv.
+     * @param speciesTable The species in the runs.
+     * @return The header line.
+     */
+    public static String csvHeader(SpeciesTable speciesTable)
+    {
+        StringBuilder line = new StringBuilder("seed,depth,width,steps");
+        for(Species species : speciesTable.getAll()) {
+            line.append(',').append(species.getDisplayName());
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many independent simulations at once, one per job, on a pool of
+ * worker threads. Every run has its own Simulator, and so its own
+ * field, conditions and random streams, and runs headless; nothing is
+ * shared between runs, so each gives the same result as it would alone
+ * and throughput grows with the number of cores.
+ *
+ * @version 7.1
+ */
+public class EnsembleRunner
+{
+    // How to run an ensemble from the command line.
+    private static final String USAGE =
+        "Usage: java EnsembleRunner [--runs n] [--first-seed n] [--steps n]"
+        + " [--depth rows] [--width cols] [--species file] [--threads n] [--out file]";
+
+    // The number of worker threads.
+    private final int threads;
+
+    /**
+     * Run an ensemble of simulations with consecutive seeds from the
+     * command line, writing one CSV line per run. All options are
+     * optional:
+     *   --runs the number of simulations,
+     *   --first-seed the seed of the first (the others follow on),
+     *   --steps the most steps each simulation runs,
+     *   --depth and --width the size of each field,
+     *   --species a species file to use instead of the default,
+     *   --threads the number of worker threads (by default, one per core),
+     *   --out the file to write the results to (by default, the console).
+     * @param args The command line options.
+     */
+    public static void main(String[] args)
+    {
+        int runs = 100;
+        long firstSeed = Randomizer.SEED;
+        int steps = 700;
+        int depth = 80;
+        int width = 120;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String out = null;
+        String speciesFile = null;
+        SpeciesTable speciesTable = null;
+        List<EnsembleJob> jobs = new ArrayList<>();
+        try {
+            for(int i = 0; i < args.length; i += 2) {
+                if(i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                String value = args[i + 1];
+                switch(args[i]) {
+                    case "--runs" -> runs = Integer.parseInt(value);
+                    case "--first-seed" -> firstSeed = Long.parseLong(value);
+                    case "--steps" -> steps = Integer.parseInt(value);
+                    case "--depth" -> depth = Integer.parseInt(value);
+                    case "--width" -> width = Integer.parseInt(value);
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    case "--out" -> out = value;
+                    case "--species" -> speciesFile = value;
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            speciesTable = speciesFile == null ? SpeciesTable.getDefault()
+                                               : SpeciesTable.load(Path.of(speciesFile));
+            for(int run = 0; run < runs; run++) {
+                jobs.add(new EnsembleJob(firstSeed + run, depth, width, steps, speciesTable));
+            }
+            if(threads < 1) {
+                throw new IllegalArgumentException("At least one thread is needed");
+            }
+        }
+        catch(IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        catch(IOException e) {
+            System.err.println("Cannot load species: " + e.getMessage());
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        List<EnsembleResult> results = new EnsembleRunner(threads).run(jobs);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        try(PrintWriter writer = out == null
+                ? new PrintWriter(System.out)
+                : new PrintWriter(Files.newBufferedWriter(Path.of(out), StandardCharsets.UTF_8))) {
+            writer.println(EnsembleResult.csvHeader(speciesTable));
+            for(EnsembleResult result : results) {
+                writer.println(result.toCsv());
+            }
+            long totalSteps = 0;
+            int complete = 0;
+            for(EnsembleResult result : results) {
+                totalSteps += result.getStepsRun();
+                if(result.isComplete()) {
+                    complete++;
+                }
+            }
+            writer.flush();
+            System.err.printf("Ran %d simulations (%d complete, %d steps) on %d threads"
+                              + " in %.3f s (%.1f steps/s)%n",
+                              results.size(), complete, totalSteps, threads,
+                              seconds, totalSteps / seconds);
+        }
+        catch(IOException e) {
+            System.err.println("Cannot write results: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Create a runner.
+     * @param threads The number of worker threads. Must be at least 1.
+     */
+    public EnsembleRunner(int threads)
+    {
+        if(threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Run every job and wait for them all to finish.
+     * @param jobs The runs to make.
+     * @return The result of each job, in the order of the jobs.
+     */
+    public List<EnsembleResult> run(List<EnsembleJob> jobs)
+    {
+        AtomicInteger workerCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread worker = new Thread(task, "ensemble-" + workerCount.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        });
+        try {
+            List<Future<EnsembleResult>> futures = new ArrayList<>();
+            for(EnsembleJob job : jobs) {
+                futures.add(pool.submit(() -> runJob(job)));
+            }
+            List<EnsembleResult> results = new ArrayList<>();
+            for(Future<EnsembleResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running the ensemble", e);
+        }
+        catch(ExecutionException e) {
+            throw new IllegalStateException("A run of the ensemble failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Make one run.
+     * @param job The run to make.
+     * @return Its result.
+     */
+    public static EnsembleResult runJob(EnsembleJob job)
+    {
+        long start = System.nanoTime();
+        Simulator simulator = new Simulator(job.getDepth(), job.getWidth(), false,
+                                            job.getSeed(), job.getSpeciesTable());
+        simulator.simulate(job.getSteps());
+        int[] counts = new int[job.getSpeciesTable().size()];
+        simulator.getField().getLiveCounts(counts);
+        return new EnsembleResult(job, simulator.getStep(), counts, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,393 @@
+/**
+ * A simulation that keeps its animals in an EntityStore rather than as
+ * Animal objects. The field is a pair of int grids holding entity ids,
+ * and each step walks the store's columns in id order. The rules are
+ * those of Animal, driven by the same SpeciesTable, so the two kinds
+ * of simulation behave alike; only the order in which animals act
+ * differs.
+ *
+ * Populations too large to hold as objects fit in a store, and the
+ * step loop and the statistics walk contiguous memory. The store and
+ * the grids can be kept outside the heap, in direct buffers or mapped
+ * files (see StoreMemory), so that even a field of hundreds of
+ * millions of cells puts almost no pressure on the garbage collector.
+ *
+ * @version 7.1
+ */
+public class EntitySimulator
+{
+    // The grid value of an empty cell.
+    private static final int EMPTY = -1;
+
+    // The dimensions of the field.
+    private final int depth, width;
+    // The seed from which all of the simulation's random decisions derive.
+    private final long seed;
+    // The species in the simulation.
+    private final SpeciesTable speciesTable;
+    // The neighbours of each cell.
+    private final Neighbourhood neighbourhood;
+    // Where the store and the grids are kept.
+    private final StoreMemory memory;
+    // The animals.
+    private final EntityStore store;
+    // The entity id in each cell of the current field, or EMPTY.
+    private StoreMemory.IntColumn cells;
+    // The entity id in each cell of the next field state, or EMPTY.
+    private StoreMemory.IntColumn nextCells;
+    // Which of the two grids is current, 0 or 1.
+    private int currentGrid;
+    // The cells of the animals that acted in the current step.
+    private final StoreMemory.IntColumn startCells;
+    // Scratch space and random numbers for the acting animal.
+    private final StepContext context;
+    // The time of day and the tide.
+    private Conditions conditions;
+    // The current step of the simulation.
+    private int step;
+
+    /**
+     * Create a populated simulation of the given size, on the heap.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param seed The seed for the simulation's random decisions.
+     * @param speciesTable The species in the simulation.
+     */
+    public EntitySimulator(int depth, int width, long seed, SpeciesTable speciesTable)
+    {
+        this(depth, width, seed, speciesTable, StoreMemory.onHeap());
+    }
+
+    /**
+     * Create a populated simulation of the given size.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param seed The seed for the simulation's random decisions.
+     * @param speciesTable The species in the simulation.
+     * @param memory Where to keep the animals and the grids.
+     */
+    public EntitySimulator(int depth, int width, long seed, SpeciesTable speciesTable,
+                           StoreMemory memory)
+    {
+        this.depth = depth;
+        this.width = width;
+        this.seed = seed;
+        this.speciesTable = speciesTable;
+        this.memory = memory;
+        neighbourhood = new Neighbourhood(depth, width);
+        store = new EntityStore(memory, depth * width / 2, speciesTable.size());
+        cells = memory.intColumn("grid0", depth * width, EMPTY);
+        nextCells = memory.intColumn("grid1", depth * width, EMPTY);
+        startCells = memory.intColumn("acted", 0, 0);
+        context = new StepContext(seed);
+        reset();
+    }
+
+    /**
+     * Reset the simulation to a starting position.
+     */
+    public void reset()
+    {
+        step = 0;
+        conditions = new Conditions();
+        store.clear();
+        cells.fill(EMPTY);
+        nextCells.fill(EMPTY);
+        populate();
+        memory.writeHeader(depth, width, step, currentGrid, store.getHighWater());
+    }
+
+    /**
+     * Run the simulation from its current state for a single step.
+     */
+    public void simulateOneStep()
+    {
+        conditions.setHighTide(step % 10 == 0);
+        conditions.advance();
+        step++;
+        context.startStep(step);
+
+        // Entities born during the step get ids below this too, when
+        // they reuse free ids; they are not in the current grid, so
+        // they are skipped.
+        int end = store.getHighWater();
+        startCells.ensureLength(end);
+        int acted = 0;
+        for(int id = 0; id < end; id++) {
+            if(store.getSpecies(id) != EntityStore.NONE) {
+                int cell = store.getCell(id);
+                if(cells.get(cell) == id) {
+                    startCells.set(acted++, cell);
+                    if(store.isAlive(id)) {
+                        context.startAct(cell);
+                        act(id, cell);
+                    }
+                }
+            }
+        }
+
+        // Remove the dead, and any animal that was pushed out of its
+        // cell in the next field state.
+        for(int id = 0; id < store.getHighWater(); id++) {
+            if(store.getSpecies(id) != EntityStore.NONE) {
+                int cell = store.getCell(id);
+                boolean placed = nextCells.get(cell) == id;
+                if(!placed || !store.isAlive(id)) {
+                    if(placed) {
+                        nextCells.set(cell, EMPTY);
+                    }
+                    store.remove(id);
+                }
+            }
+        }
+
+        // Empty the old grid, visiting only the cells that were
+        // occupied, and make it the spare for the next step.
+        for(int i = 0; i < acted; i++) {
+            cells.set(startCells.get(i), EMPTY);
+        }
+        StoreMemory.IntColumn previous = cells;
+        cells = nextCells;
+        nextCells = previous;
+        currentGrid = 1 - currentGrid;
+        memory.writeHeader(depth, width, step, currentGrid, store.getHighWater());
+    }
+
+    /**
+     * Return whether every species is still alive.
+     * @return true if there is at least one animal of each species.
+     */
+    public boolean isViable()
+    {
+        for(int code = 0; code < speciesTable.size(); code++) {
+            if(store.getLiveCount(code) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Print out the number of animals of each species.
+     */
+    public void printStats()
+    {
+        StringBuilder details = new StringBuilder();
+        for(Species species : speciesTable.getAll()) {
+            details.append(species.getDisplayName())
+                   .append(": ")
+                   .append(store.getLiveCount(species.getCode()))
+                   .append(' ');
+        }
+        System.out.println(details.toString().trim());
+    }
+
+    /**
+     * Return the current step of the simulation.
+     * @return The number of steps completed since the last reset.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * Return the store holding the animals.
+     * @return The entity store.
+     */
+    public EntityStore getStore()
+    {
+        return store;
+    }
+
+    /**
+     * Let one animal age, breed, eat and move.
+     * @param id The animal.
+     * @param cell Its cell in the current field.
+     */
+    private void act(int id, int cell)
+    {
+        Species species = speciesTable.get(store.getSpecies(id));
+        int age = store.getAge(id) + 1;
+        store.setAge(id, age);
+        if(age > species.getMaxAge()) {
+            store.setDead(id);
+            return;
+        }
+        if(species.isPredator()) {
+            int food = store.getFood(id) - 1;
+            store.setFood(id, food);
+            if(food <= 0) {
+                store.setDead(id);
+                return;
+            }
+        }
+        if(species.sleepsAtNight() && conditions.isNight()) {
+            place(id, cell);
+            return;
+        }
+
+        int[] freeCells = context.getFreeCells();
+        int free = getFreeAdjacentCells(cell, freeCells);
+        if(free > 0) {
+            free = giveBirth(id, cell, species, free);
+        }
+        int nextCell = Field.NO_CELL;
+        if(species.isPredator()) {
+            nextCell = findFood(id, cell, species);
+        }
+        if(nextCell == Field.NO_CELL && free > 0) {
+            nextCell = context.takeRandomCell(freeCells, free);
+        }
+        if(nextCell != Field.NO_CELL) {
+            place(id, nextCell);
+        }
+        else {
+            // Overcrowding.
+            store.setDead(id);
+        }
+    }
+
+    /**
+     * Give birth to young in free adjacent cells, if the animal is a
+     * female of breeding age with a male of its species nearby.
+     * @param id The animal.
+     * @param cell Its cell in the current field.
+     * @param species Its species.
+     * @param free The number of free cells in the context's freeCells.
+     * @return The number of free cells left after the births.
+     */
+    private int giveBirth(int id, int cell, Species species, int free)
+    {
+        RandomStream rand = context.getRandom();
+        int births = 0;
+        if(store.getAge(id) >= species.getBreedingAge() && !store.isMale(id)
+           && isMateNearby(cell, species.getCode())
+           && rand.nextDouble() <= species.getBreedingProbability()) {
+            births = rand.nextInt(species.getMaxLitterSize()) + 1;
+        }
+        int[] freeCells = context.getFreeCells();
+        for(int b = 0; b < births && free > 0; b++) {
+            int birthCell = context.takeRandomCell(freeCells, free--);
+            boolean male = rand.nextInt(2) == 1;
+            int young = store.add(species.getCode(), male, 0,
+                                  species.getInitialFoodLevel(), birthCell);
+            place(young, birthCell);
+        }
+        return free;
+    }
+
+    /**
+     * Look for food next to a predator and eat the first live prey found,
+     * unless it is contested and the rival takes it first.
+     * @param id The predator.
+     * @param cell Its cell in the current field.
+     * @param species Its species.
+     * @return The cell where food was found, or Field.NO_CELL.
+     */
+    private int findFood(int id, int cell, Species species)
+    {
+        RandomStream rand = context.getRandom();
+        double winProbability = species.getWinProbability(conditions.isHighTide());
+        int[] adjacentCells = context.getAdjacentCells();
+        int remaining = neighbourhood.getAdjacentCells(cell, adjacentCells);
+        while(remaining > 0) {
+            int target = context.takeRandomCell(adjacentCells, remaining--);
+            int prey = cells.get(target);
+            if(prey != EMPTY && store.isAlive(prey)) {
+                int preySpecies = store.getSpecies(prey);
+                int foodValue = species.getFoodValue(preySpecies);
+                if(foodValue > 0
+                   && (!species.isContested(preySpecies)
+                       || !isNearby(target, species.getRival())
+                       || rand.nextDouble() < winProbability)) {
+                    store.setDead(prey);
+                    store.setFood(id, store.getFood(id) + foodValue);
+                    return target;
+                }
+            }
+        }
+        return Field.NO_CELL;
+    }
+
+    /**
+     * Return whether there is a live male of the species next to a cell
+     * in the current field.
+     */
+    private boolean isMateNearby(int cell, int species)
+    {
+        int[] nearbyCells = context.getNearbyCells();
+        int count = neighbourhood.getAdjacentCells(cell, nearbyCells);
+        for(int i = 0; i < count; i++) {
+            int other = cells.get(nearbyCells[i]);
+            if(other != EMPTY && store.getSpecies(other) == species
+               && store.isAlive(other) && store.isMale(other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return whether there is an animal of the species, alive or not,
+     * next to a cell in the current field.
+     */
+    private boolean isNearby(int cell, int species)
+    {
+        int[] nearbyCells = context.getNearbyCells();
+        int count = neighbourhood.getAdjacentCells(cell, nearbyCells);
+        for(int i = 0; i < count; i++) {
+            int other = cells.get(nearbyCells[i]);
+            if(other != EMPTY && store.getSpecies(other) == species) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write the cells next to the given one that are free in the next
+     * field state (empty or holding a dead animal) into the buffer.
+     * @return The number of free cells.
+     */
+    private int getFreeAdjacentCells(int cell, int[] buffer)
+    {
+        int free = 0;
+        for(int offset : neighbourhood.getOffsets(cell)) {
+            int occupant = nextCells.get(cell + offset);
+            if(occupant == EMPTY || !store.isAlive(occupant)) {
+                buffer[free++] = cell + offset;
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Place an animal in the next field state. Any animal already in
+     * the cell is lost.
+     */
+    private void place(int id, int cell)
+    {
+        nextCells.set(cell, id);
+        store.setCell(id, cell);
+    }
+
+    /**
+     * Randomly populate the field, drawing the same decisions for each
+     * cell as Simulator does.
+     */
+    private void populate()
+    {
+        RandomStream rand = new RandomStream(0);
+        for(int cell = 0; cell < depth * width; cell++) {
+            rand.setSeed(Randomizer.seedFor(seed, 0, cell));
+            Species species = speciesTable.chooseForCell(rand);
+            if(species != null) {
+                boolean male = rand.nextInt(2) == 1;
+                int age = rand.nextInt(species.getMaxAge());
+                cells.set(cell, store.add(species.getCode(), male, age,
+                                          species.getInitialFoodLevel(), cell));
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+import java.util.Arrays;
+
+/**
+ * A structure-of-arrays store for animal state. Instead of one object
+ * per animal, each animal is an entity id indexing parallel primitive
+ * columns for its species, sex, age, food level and cell, about ten
+ * bytes per animal in all. Loops over the animals walk contiguous
+ * memory rather than following a pointer per animal.
+ *
+ * Ids of removed entities go on a free list and are reused for later
+ * births, so the columns only grow with the peak population. The live
+ * entities of each species are counted as they are added, die and are
+ * removed, so population counts never need a scan.
+ *
+ * The columns are kept in a StoreMemory, on the heap or outside it.
+ *
+ * @version 7.1
+ */
+public class EntityStore
+{
+    // The species code of an unused id.
+    public static final int NONE = -1;
+
+    // Flag bits.
+    private static final byte MALE = 1;
+    private static final byte DEAD = 2;
+
+    // The species code of each entity, or NONE.
+    private final StoreMemory.ByteColumn species;
+    // The MALE and DEAD flags of each entity.
+    private final StoreMemory.ByteColumn flags;
+    // The age of each entity.
+    private final StoreMemory.ShortColumn age;
+    // The food level of each entity (zero for animals that do not eat).
+    private final StoreMemory.ShortColumn food;
+    // The cell index of each entity.
+    private final StoreMemory.IntColumn cell;
+    // Ids free for reuse, used as a stack.
+    private final StoreMemory.IntColumn freeIds;
+    // The number of ids on the free list.
+    private int freeCount;
+    // One more than the highest id ever used.
+    private int highWater;
+    // The number of entities in the store.
+    private int size;
+    // The number of live entities of each species.
+    private final int[] liveCounts;
+
+    /**
+     * Create an empty store on the heap.
+     * @param capacity The number of entities to make room for initially.
+     * @param speciesCount The number of species, at most SpeciesTable.MAX_SPECIES.
+     */
+    public EntityStore(int capacity, int speciesCount)
+    {
+        this(StoreMemory.onHeap(), capacity, speciesCount);
+    }
+
+    /**
+     * Create an empty store in the given memory.
+     * @param memory Where to keep the columns.
+     * @param capacity The number of entities to make room for initially.
+     * @param speciesCount The number of species, at most SpeciesTable.MAX_SPECIES.
+     */
+    public EntityStore(StoreMemory memory, int capacity, int speciesCount)
+    {
+        liveCounts = new int[speciesCount];
+        capacity = Math.max(capacity, 16);
+        species = memory.byteColumn("species", capacity, (byte) NONE);
+        flags = memory.byteColumn("flags", capacity, (byte) 0);
+        age = memory.shortColumn("age", capacity);
+        food = memory.shortColumn("food", capacity);
+        cell = memory.intColumn("cell", capacity, 0);
+        freeIds = memory.intColumn("free", capacity, 0);
+    }
+
+    /**
+     * Add a live entity, reusing a free id if there is one.
+     * @param speciesCode The entity's species (a species code).
+     * @param male Whether the entity is male.
+     * @param age The entity's age.
+     * @param food The entity's food level.
+     * @param cell The entity's cell index.
+     * @return The id of the new entity.
+     */
+    public int add(int speciesCode, boolean male, int age, int food, int cell)
+    {
+        int id;
+        if(freeCount > 0) {
+            id = freeIds.get(--freeCount);
+        }
+        else {
+            if(highWater == species.length()) {
+                grow();
+            }
+            id = highWater++;
+        }
+        species.set(id, (byte) speciesCode);
+        flags.set(id, male ? MALE : 0);
+        setAge(id, age);
+        setFood(id, food);
+        this.cell.set(id, cell);
+        size++;
+        liveCounts[speciesCode]++;
+        return id;
+    }
+
+    /**
+     * Remove an entity, putting its id on the free list.
+     * @param id The entity to remove.
+     */
+    public void remove(int id)
+    {
+        if(isAlive(id)) {
+            liveCounts[species.get(id)]--;
+        }
+        species.set(id, (byte) NONE);
+        freeIds.set(freeCount++, id);
+        size--;
+    }
+
+    /**
+     * Remove every entity.
+     */
+    public void clear()
+    {
+        species.fill(0, highWater, (byte) NONE);
+        highWater = 0;
+        freeCount = 0;
+        size = 0;
+        Arrays.fill(liveCounts, 0);
+    }
+
+    /**
+     * Copy the number of live entities of each species.
+     * @param counts Where to write the counts, indexed by species code.
+     *               Must have room for every species.
+     */
+    public void countAlive(int[] counts)
+    {
+        System.arraycopy(liveCounts, 0, counts, 0, liveCounts.length);
+    }
+
+    /**
+     * Return the number of live entities of a species.
+     * @param speciesCode The species (a species code).
+     * @return The number of live entities of that species.
+     */
+    public int getLiveCount(int speciesCode)
+    {
+        return liveCounts[speciesCode];
+    }
+
+    /**
+     * @return The species code of the entity, or NONE for an unused id.
+     */
+    public int getSpecies(int id)
+    {
+        return species.get(id);
+    }
+
+    /**
+     * @return Whether the entity is male.
+     */
+    public boolean isMale(int id)
+    {
+        return (flags.get(id) & MALE) != 0;
+    }
+
+    /**
+     * @return Whether the entity is alive.
+     */
+    public boolean isAlive(int id)
+    {
+        return (flags.get(id) & DEAD) == 0;
+    }
+
+    /**
+     * Mark the entity as dead. It stays in the store, keeping its last
+     * cell, until it is removed.
+     */
+    public void setDead(int id)
+    {
+        if(isAlive(id)) {
+            liveCounts[species.get(id)]--;
+        }
+        flags.set(id, (byte) (flags.get(id) | DEAD));
+    }
+
+    /**
+     * @return The age of the entity.
+     */
+    public int getAge(int id)
+    {
+        return age.get(id);
+    }
+
+    /**
+     * Set the age of the entity.
+     */
+    public void setAge(int id, int newAge)
+    {
+        age.set(id, (short) Math.min(newAge, Short.MAX_VALUE));
+    }
+
+    /**
+     * @return The food level of the entity.
+     */
+    public int getFood(int id)
+    {
+        return food.get(id);
+    }
+
+    /**
+     * Set the food level of the entity.
+     */
+    public void setFood(int id, int newFood)
+    {
+        food.set(id, (short) Math.min(newFood, Short.MAX_VALUE));
+    }
+
+    /**
+     * @return The cell index of the entity.
+     */
+    public int getCell(int id)
+    {
+        return cell.get(id);
+    }
+
+    /**
+     * Set the cell index of the entity.
+     */
+    public void setCell(int id, int newCell)
+    {
+        cell.set(id, newCell);
+    }
+
+    /**
+     * @return One more than the highest id in use; every entity has an
+     *         id below this.
+     */
+    public int getHighWater()
+    {
+        return highWater;
+    }
+
+    /**
+     * @return The number of entities in the store, alive or dead.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Add a page to every column. Nothing is copied.
+     */
+    private void grow()
+    {
+        int capacity = species.length() + 1;
+        species.ensureLength(capacity);
+        flags.ensureLength(capacity);
+        age.ensureLength(capacity);
+        food.ensureLength(capacity);
+        cell.ensureLength(capacity);
+        freeIds.ensureLength(capacity);
+    }
+}
@@ -1,33 +1,129 @@
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * Represent a rectangular grid of field positions.
  * Each position is able to store a single animal/object.
  * 
+ * Every position can be addressed either by a Location or by its cell
+ * index, row * width + col. The cells are stored in chunks of
+ * CHUNK_SIZE consecutive indices, and a chunk is only allocated once an
+ * animal is placed in it, so an ocean that is mostly empty takes memory
+ * in proportion to its population rather than its area. Emptying the
+ * field releases its chunks, keeping them for reuse as it fills again.
+ * Cells in chunks that were never allocated read as empty, so looking
+ * up a neighbour works the same whichever chunk it is in.
+ * 
+ * The field keeps a count of the live animals of each species in it,
+ * updated as animals are placed, replaced and killed, so population
+ * reports and viability checks take constant time.
+ * 
+ * It also keeps bit sets of the cells holding each species, and each
+ * species' males (see OccupancyBits), so questions about a cell's
+ * neighbours take a few word operations.
+ * 
+ * Each field keeps a pool of animals for each species. When a field
+ * that has become the previous state of a simulation is cleared with
+ * clear(Field), the animals that did not make it into the new state
+ * go into its pools, and obtainAnimal reuses them for births, so a
+ * steady population is simulated without allocating animals.
+ * 
  * @author David J. Barnes and Michael Kölling
- * @version 7.0
+ * @version 7.1
  */
 public class Field
 {
-    // A random number generator for providing random locations.
-    private static final Random rand = Randomizer.getRandom();
-    
+    // The most cells that can be adjacent to a single cell.
+    public static final int MAX_NEIGHBOURS = 8;
+    // The cell index used to mean "no cell".
+    public static final int NO_CELL = -1;
+    // The number of bits of a cell index that select a cell within its chunk.
+    public static final int CHUNK_BITS = 8;
+    // The number of cells in a chunk.
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    // The bits of a cell index that select a cell within its chunk.
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // The source of field generations, unique across all fields.
+    private static final AtomicInteger GENERATIONS = new AtomicInteger();
+
     // The dimensions of the field.
     private final int depth, width;
-    // Animals mapped by location.
-    private final Map<Location, Animal> field = new HashMap<>();
+    // A chunk that is never filled, standing in for every chunk that is
+    // not allocated so that reading a cell needs no null check.
+    private static final Chunk EMPTY_CHUNK = new Chunk();
+
+    // The chunks of cells, by chunk number (cell index >> CHUNK_BITS).
+    // EMPTY_CHUNK for a chunk with no animals in it.
+    private final Chunk[] chunks;
+    // The numbers of the allocated chunks, and how many there are.
+    private int[] liveChunks = new int[16];
+    private int liveChunkCount;
+    // Released chunks, kept for reuse.
+    private final ArrayDeque<Chunk> spareChunks = new ArrayDeque<>();
+    // For each position in the animals list, the cell the animal occupies.
+    private int[] occupiedCells = new int[CHUNK_SIZE];
     // The animals.
     private final List<Animal> animals = new ArrayList<>();
+    // The species that may live in the field.
+    private final SpeciesTable speciesTable;
+    // The number of live animals of each species, indexed by species code.
+    private final int[] liveCounts;
+    // Whether animals are being placed from several threads at once, in
+    // which case only the cells are updated until placement finishes.
+    private boolean concurrentPlacement;
+    // The index offsets of each cell's neighbours.
+    private final Neighbourhood neighbourhood;
+    // The cells holding each species, and each species' males.
+    private final OccupancyBits occupancy;
+    // Identifies what the field holds since it was last cleared. Animals
+    // placed in the field are stamped with it.
+    private int generation = GENERATIONS.incrementAndGet();
+    // Animals free for reuse, by species code.
+    private final Animal[][] pools;
+    // The number of animals in each pool. It may go below zero while
+    // animals are taken from several threads at once.
+    private final AtomicIntegerArray poolSizes;
+    // The number of animals in each pool when the field was last
+    // cleared. Each birth since has taken one from it.
+    private final int[] clearedPoolSizes;
 
     /**
-     * Represent a field of the given dimensions.
+     * Represent a field of the given dimensions, for the default species.
      * @param depth The depth of the field.
      * @param width The width of the field.
      */
     public Field(int depth, int width)
     {
+        this(depth, width, SpeciesTable.getDefault());
+    }
+
+    /**
+     * Represent a field of the given dimensions.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param speciesTable The species that may live in the field.
+     * @throws IllegalArgumentException If the field has more cells than
+     *                                  a cell index can address.
+     */
+    public Field(int depth, int width, SpeciesTable speciesTable)
+    {
+        if((long) depth * width > Integer.MAX_VALUE - CHUNK_SIZE) {
+            throw new IllegalArgumentException("A field of " + depth + " x " + width
+                                               + " has too many cells");
+        }
         this.depth = depth;
         this.width = width;
+        chunks = new Chunk[(depth * width + CHUNK_MASK) >>> CHUNK_BITS];
+        Arrays.fill(chunks, EMPTY_CHUNK);
+        neighbourhood = new Neighbourhood(depth, width);
+        this.speciesTable = speciesTable;
+        liveCounts = new int[speciesTable.size()];
+        occupancy = new OccupancyBits(depth, width, speciesTable.size());
+        pools = new Animal[speciesTable.size()][0];
+        poolSizes = new AtomicIntegerArray(speciesTable.size());
+        clearedPoolSizes = new int[speciesTable.size()];
     }
 
     /**
@@ -40,12 +136,109 @@ public class Field
     public void placeAnimal(Animal anAnimal, Location location)
     {
         assert location != null;
-        Object other = field.get(location);
-        if(other != null) {
-            animals.remove(other);
+        placeAnimal(anAnimal, indexOf(location));
+    }
+
+    /**
+     * Place an animal in the given cell.
+     * If there is already an animal in the cell it will
+     * be lost.
+     * @param anAnimal The animal to be placed.
+     * @param index The cell index (row * width + col).
+     */
+    public void placeAnimal(Animal anAnimal, int index)
+    {
+        Chunk chunk = chunks[index >>> CHUNK_BITS];
+        if(chunk == EMPTY_CHUNK) {
+            chunk = allocateChunk(index >>> CHUNK_BITS);
+        }
+        int cell = index & CHUNK_MASK;
+        Animal occupant = chunk.cells[cell];
+        anAnimal.setGeneration(generation);
+        if(concurrentPlacement) {
+            chunk.cells[cell] = anAnimal;
+            return;
+        }
+        if(occupant != null) {
+            // Take over the slot of the animal being replaced.
+            animals.set(chunk.slots[cell], anAnimal);
+            if(occupant.isAlive()) {
+                liveCounts[occupant.getSpecies().getCode()]--;
+            }
+            occupancy.clear(index, occupant.getSpecies().getCode());
+        }
+        else {
+            chunk.slots[cell] = animals.size();
+            addOccupiedCell(index);
+            animals.add(anAnimal);
+        }
+        if(anAnimal.isAlive()) {
+            liveCounts[anAnimal.getSpecies().getCode()]++;
+        }
+        occupancy.set(index, anAnimal.getSpecies().getCode(), anAnimal.isMale());
+        chunk.cells[cell] = anAnimal;
+    }
+
+    /**
+     * Allow animals to be placed from several threads at once. Until
+     * finishConcurrentPlacement is called, placing an animal only fills
+     * its cell, so threads placing animals in cells far enough apart
+     * cannot interfere with each other; only allocating a chunk takes a
+     * lock. The list of animals, the
+     * population counts and the occupancy bits are not kept up to date
+     * in the meantime.
+     */
+    public void beginConcurrentPlacement()
+    {
+        concurrentPlacement = true;
+    }
+
+    /**
+     * Finish placing animals from several threads and rebuild the list
+     * of animals, in cell order, the population counts and the occupancy
+     * bits from the filled cells.
+     */
+    public void finishConcurrentPlacement()
+    {
+        concurrentPlacement = false;
+        animals.clear();
+        Arrays.fill(liveCounts, 0);
+        occupancy.clearAll();
+        // Chunks were allocated in whatever order the threads reached them.
+        Arrays.sort(liveChunks, 0, liveChunkCount);
+        for(int i = 0; i < liveChunkCount; i++) {
+            int first = liveChunks[i] << CHUNK_BITS;
+            Chunk chunk = chunks[liveChunks[i]];
+            for(int cell = 0; cell < CHUNK_SIZE; cell++) {
+                Animal anAnimal = chunk.cells[cell];
+                if(anAnimal != null) {
+                    chunk.slots[cell] = animals.size();
+                    addOccupiedCell(first + cell);
+                    animals.add(anAnimal);
+                    if(anAnimal.isAlive()) {
+                        liveCounts[anAnimal.getSpecies().getCode()]++;
+                    }
+                    occupancy.set(first + cell, anAnimal.getSpecies().getCode(),
+                                  anAnimal.isMale());
+                }
+            }
+        }
+    }
+
+    /**
+     * Kill an animal. If it has been placed in this field, it is no
+     * longer counted among the field's live animals.
+     * @param anAnimal The animal to kill.
+     */
+    public void killAnimal(Animal anAnimal)
+    {
+        if(anAnimal.isAlive()) {
+            int index = anAnimal.getCell();
+            if(!concurrentPlacement && index != NO_CELL && getAnimalAt(index) == anAnimal) {
+                liveCounts[anAnimal.getSpecies().getCode()]--;
+            }
+            anAnimal.setDead();
         }
-        field.put(location, anAnimal);
-        animals.add(anAnimal);
     }
     
     /**
@@ -55,7 +248,91 @@ public class Field
      */
     public Animal getAnimalAt(Location location)
     {
-        return field.get(location);
+        return getAnimalAt(indexOf(location));
+    }
+
+    /**
+     * Return the animal in the given cell, if any.
+     * @param index The cell index (row * width + col).
+     * @return The animal in the cell, or null if there is none.
+     */
+    public Animal getAnimalAt(int index)
+    {
+        return chunks[index >>> CHUNK_BITS].cells[index & CHUNK_MASK];
+    }
+
+    /**
+     * Find the first occupied cell in a range of cells. Chunks with no
+     * animals in them are skipped without looking at their cells.
+     * @param from The first cell index to look at.
+     * @param to The cell index after the last one to look at.
+     * @return The index of the first occupied cell, or to if there is none.
+     */
+    public int nextOccupiedCell(int from, int to)
+    {
+        int index = from;
+        while(index < to) {
+            Chunk chunk = chunks[index >>> CHUNK_BITS];
+            int chunkEnd = Math.min((index | CHUNK_MASK) + 1, to);
+            if(chunk != EMPTY_CHUNK) {
+                for(; index < chunkEnd; index++) {
+                    if(chunk.cells[index & CHUNK_MASK] != null) {
+                        return index;
+                    }
+                }
+            }
+            index = chunkEnd;
+        }
+        return to;
+    }
+
+    /**
+     * Return the cell index of the given location.
+     * @param location A location within the field.
+     * @return The cell index (row * width + col).
+     */
+    public int indexOf(Location location)
+    {
+        return indexOf(location.row(), location.col());
+    }
+
+    /**
+     * Return the cell index of the given row and column.
+     * @param row A row within the field.
+     * @param col A column within the field.
+     * @return The cell index (row * width + col).
+     */
+    public int indexOf(int row, int col)
+    {
+        return row * width + col;
+    }
+
+    /**
+     * Return the location of the given cell.
+     * @param index The cell index (row * width + col).
+     * @return The location of the cell.
+     */
+    public Location locationOf(int index)
+    {
+        return new Location(index / width, index % width);
+    }
+
+    /**
+     * Return the number of cells in the field.
+     * @return depth * width.
+     */
+    public int getCellCount()
+    {
+        return depth * width;
+    }
+
+    /**
+     * Return the number of chunks holding animals.
+     * @return The number of chunks allocated.
+     */
+    public int getChunkCount()
+    {
+        return liveChunkCount;
     }
 
     /**
@@ -65,18 +342,9 @@ public class Field
      */
     public List<Location> getFreeAdjacentLocations(Location location)
     {
-        List<Location> free = new LinkedList<>();
-        List<Location> adjacent = getAdjacentLocations(location);
-        for(Location next : adjacent) {
-            Animal anAnimal = field.get(next);
-            if(anAnimal == null) {
-                free.add(next);
-            }
-            else if(!anAnimal.isAlive()) {
-                free.add(next);
-            }
-        }
-        return free;
+        int[] buffer = new int[MAX_NEIGHBOURS];
+        int count = getFreeAdjacentCells(indexOf(location), buffer);
+        return shuffledLocations(buffer, count);
     }
 
     /**
@@ -88,115 +356,298 @@ public class Field
      */
     public List<Location> getAdjacentLocations(Location location)
     {
-        // The list of locations to be returned.
-        List<Location> locations = new ArrayList<>();
-        if(location != null) {
-            int row = location.row();
-            int col = location.col();
-            for(int roffset = -1; roffset <= 1; roffset++) {
-                int nextRow = row + roffset;
-                if(nextRow >= 0 && nextRow < depth) {
-                    for(int coffset = -1; coffset <= 1; coffset++) {
-                        int nextCol = col + coffset;
-                        // Exclude invalid locations and the original location.
-                        if(nextCol >= 0 && nextCol < width && (roffset != 0 || coffset != 0)) {
-                            locations.add(new Location(nextRow, nextCol));
-                        }
-                    }
-                }
-            }
-            
-            // Shuffle the list. Several other methods rely on the list
-            // being in a random order.
-            Collections.shuffle(locations, rand);
+        if(location == null) {
+            return new ArrayList<>();
+        }
+        int[] buffer = new int[MAX_NEIGHBOURS];
+        int count = getAdjacentCells(indexOf(location), buffer);
+        return shuffledLocations(buffer, count);
+    }
+
+    /**
+     * Convert cell indices into a list of locations in a random order.
+     * Several other methods rely on the list being in a random order.
+     * The order is not reproducible; the simulation itself draws its
+     * random orderings from its own streams.
+     * @param buffer The cell indices.
+     * @param count How many entries of the buffer to use.
+     * @return The locations of the cells, shuffled.
+     */
+    private List<Location> shuffledLocations(int[] buffer, int count)
+    {
+        RandomStream rand = new RandomStream(ThreadLocalRandom.current().nextLong());
+        List<Location> locations = new ArrayList<>(count);
+        for(int remaining = count; remaining > 0; remaining--) {
+            locations.add(locationOf(takeRandomCell(buffer, remaining, rand)));
         }
         return locations;
     }
 
     /**
-     * Print out the number of whales, sharks, salmon, clownfish and sardines there are in the field.
+     * Write the indices of the cells adjacent to the given one into
+     * the buffer. The cell itself is not included, and the cells are
+     * always written in the same order.
+     * @param index The cell index (row * width + col).
+     * @param buffer Where to write the adjacent cell indices. Must hold
+     *               at least MAX_NEIGHBOURS entries.
+     * @return The number of adjacent cells written.
      */
-    public void fieldStats()
+    public int getAdjacentCells(int index, int[] buffer)
     {
-        int numWhales = 0, numSalmon = 0, numSharks = 0, numSardines = 0;
-        for(Animal anAnimal : field.values()) {
-            if(anAnimal instanceof Whale whale) {
-                if(whale.isAlive()) {
-                    numWhales++;
-                }
-            }
-            else if(anAnimal instanceof Salmon salmon) {
-                if(salmon.isAlive()) {
-                    numSalmon++;
-                }
-            }
-            else if(anAnimal instanceof Sardine sardine) {
-                if(sardine.isAlive()) {
-                    numSardines++;
-                }
-            }
-            else if(anAnimal instanceof Shark shark) {
-                if(shark.isAlive()) {
-                    numSharks++;
-                }
+        return neighbourhood.getAdjacentCells(index, buffer);
+    }
+
+    /**
+     * Write the indices of the free cells adjacent to the given one into
+     * the buffer. A cell is free if it is empty or holds a dead animal.
+     * @param index The cell index (row * width + col).
+     * @param buffer Where to write the free cell indices. Must hold
+     *               at least MAX_NEIGHBOURS entries.
+     * @return The number of free cells written.
+     */
+    public int getFreeAdjacentCells(int index, int[] buffer)
+    {
+        int[] offsets = neighbourhood.getOffsets(index);
+        int free = 0;
+        for(int offset : offsets) {
+            Animal anAnimal = getAnimalAt(index + offset);
+            if(anAnimal == null || !anAnimal.isAlive()) {
+                buffer[free++] = index + offset;
             }
         }
-        System.out.println("Salmon: " + numSalmon +
-                           " Whales: " + numWhales+
-                           " Sardines: " + numSardines+
-                           " Sharks: " + numSharks);
+        return free;
+    }
+
+    /**
+     * Return whether an animal of a species, alive or dead, is in one of
+     * the cells adjacent to the given one. Not valid while animals are
+     * being placed concurrently.
+     * @param index The cell index (row * width + col).
+     * @param speciesCode The species code.
+     * @return true if there is one.
+     */
+    public boolean isSpeciesAdjacent(int index, int speciesCode)
+    {
+        return occupancy.isAdjacent(index, speciesCode);
+    }
+
+    /**
+     * Return the number of animals of a species, alive or dead, in the
+     * cells adjacent to the given one. Not valid while animals are being
+     * placed concurrently.
+     * @param index The cell index (row * width + col).
+     * @param speciesCode The species code.
+     * @return The number of them.
+     */
+    public int countSpeciesAdjacent(int index, int speciesCode)
+    {
+        return occupancy.countAdjacent(index, speciesCode);
+    }
+
+    /**
+     * Write the cells adjacent to the given one that hold a male of a
+     * species, alive or dead, into the buffer. Not valid while animals
+     * are being placed concurrently.
+     * @param index The cell index (row * width + col).
+     * @param species The species.
+     * @param buffer Where to write the cell indices. Must hold at least
+     *               MAX_NEIGHBOURS entries.
+     * @return The number of cells written.
+     */
+    public int getAdjacentMales(int index, Species species, int[] buffer)
+    {
+        return occupancy.getAdjacentMales(index, species.getCode(), buffer);
+    }
+
+    /**
+     * Draw a random cell from the first 'remaining' entries of the buffer,
+     * swapping it to position remaining - 1 (one step of a partial
+     * Fisher-Yates shuffle).
+     * @param buffer Cell indices.
+     * @param remaining How many cells have not been drawn yet. Must be
+     *                  greater than zero.
+     * @param rand The random number generator to draw with.
+     * @return The drawn cell index.
+     */
+    public static int takeRandomCell(int[] buffer, int remaining, RandomStream rand)
+    {
+        int last = remaining - 1;
+        int pick = rand.nextInt(remaining);
+        int cell = buffer[pick];
+        buffer[pick] = buffer[last];
+        buffer[last] = cell;
+        return cell;
+    }
+
+    /**
+     * Return the number of live animals of a species in the field.
+     * @param species The species.
+     * @return The number of live animals of that species.
+     */
+    public int getLiveCount(Species species)
+    {
+        return liveCounts[species.getCode()];
+    }
+
+    /**
+     * Copy the number of live animals of each species in the field.
+     * @param counts Where to write the counts, indexed by species
+     *               code. Must have room for every species.
+     */
+    public void getLiveCounts(int[] counts)
+    {
+        System.arraycopy(liveCounts, 0, counts, 0, liveCounts.length);
+    }
+
+    /**
+     * Return the number of live animals of each species in the field.
+     * @return A description such as "Salmon: 10 Sardine: 4 ...".
+     */
+    public String getPopulationDetails()
+    {
+        StringBuilder details = new StringBuilder();
+        for(Species species : speciesTable.getAll()) {
+            details.append(species.getDisplayName())
+                   .append(": ")
+                   .append(liveCounts[species.getCode()])
+                   .append(' ');
+        }
+        return details.toString().trim();
     }
 
     /**
-     * Empty the field.
+     * Print out the number of live animals of each species in the field.
+     */
+    public void fieldStats()
+    {
+        System.out.println(getPopulationDetails());
+    }
+
+    /**
+     * Empty the field and release its chunks. Only the occupied cells
+     * are visited, so the cost depends on the number of animals rather
+     * than the size of the field.
      */
     public void clear()
     {
-        field.clear();
+        for(int slot = 0; slot < animals.size(); slot++) {
+            int index = occupiedCells[slot];
+            chunks[index >>> CHUNK_BITS].cells[index & CHUNK_MASK] = null;
+        }
+        releaseChunks();
     }
 
     /**
-     * Return whether there is at least one salmon and one whale in the field.
-     * @return true if there is at least one salmon and one whale in the field.
+     * Empty the field, keeping the animals that are not also in the
+     * given field for reuse by obtainAnimal. They replace any animals
+     * kept before, so the pools never hold more animals than the field
+     * did. Animals must not be used once they have left both fields, as
+     * they may become other animals.
+     * @param successor The field that follows this one, such as the new
+     *                  state of a simulation after a step.
      */
-    public boolean isViable()
+    public void clear(Field successor)
     {
-        boolean salmonFound = false;
-        boolean whaleFound = false;
-        boolean sharkFound= false;
-        boolean sardineFound = false;
-        boolean clownfishFound = false;
-        
-        Iterator<Animal> it = animals.iterator();
-        while(it.hasNext() && ! (salmonFound && whaleFound && sardineFound && sharkFound && clownfishFound)) {
-            Animal anAnimal = it.next();
-            if(anAnimal instanceof Salmon salmon) {
-                if(salmon.isAlive()) {
-                    salmonFound = true;
-                }
-            }
-            else if(anAnimal instanceof Whale whale) {
-                if(whale.isAlive()) {
-                    whaleFound = true;
-                }
-            }
-            else if(anAnimal instanceof Sardine sardine) {
-                if(sardine.isAlive()) {
-                    sardineFound = true;
-                }
-            }
-            else if(anAnimal instanceof Shark shark) {
-                if(shark.isAlive()) {
-                    sharkFound = true;
+        int[] sizes = new int[pools.length];
+        for(int code = 0; code < pools.length; code++) {
+            Arrays.fill(pools[code], 0, Math.max(poolSizes.get(code), 0), null);
+        }
+        for(int slot = 0; slot < animals.size(); slot++) {
+            int index = occupiedCells[slot];
+            Animal anAnimal = animals.get(slot);
+            if(anAnimal.getGeneration() != successor.generation) {
+                int code = anAnimal.getSpecies().getCode();
+                if(sizes[code] == pools[code].length) {
+                    pools[code] = Arrays.copyOf(pools[code], Math.max(16, sizes[code] * 2));
                 }
+                pools[code][sizes[code]++] = anAnimal;
             }
-            else if(anAnimal instanceof Clownfish clownfish) {
-                if(clownfish.isAlive()) {
-                    clownfishFound = true;
-                }
+            chunks[index >>> CHUNK_BITS].cells[index & CHUNK_MASK] = null;
+        }
+        for(int code = 0; code < pools.length; code++) {
+            poolSizes.set(code, sizes[code]);
+        }
+        releaseChunks();
+    }
+
+    /**
+     * Return a new animal for a birth in this field: an animal from the
+     * species' pool, made new, or a newly created one if the pool is
+     * empty. Either way it is as if it had been created with
+     * new Animal(species, false, cell, rand). May be called from
+     * several threads at once.
+     * @param species The animal's species.
+     * @param cell The animal's cell index.
+     * @param rand The random number generator used to pick its gender.
+     * @return The animal, not yet placed in the field.
+     */
+    public Animal obtainAnimal(Species species, int cell, RandomStream rand)
+    {
+        int code = species.getCode();
+        int size = poolSizes.decrementAndGet(code);
+        if(size < 0) {
+            return new Animal(species, false, cell, rand);
+        }
+        Animal anAnimal = pools[code][size];
+        pools[code][size] = null;
+        anAnimal.initialise(false, cell, rand);
+        return anAnimal;
+    }
+
+    /**
+     * Forget the animals and release the chunks, once the cells have
+     * been emptied, and start a new generation.
+     */
+    private void releaseChunks()
+    {
+        animals.clear();
+        Arrays.fill(liveCounts, 0);
+        occupancy.clearAll();
+
+        // Keep only as many spare chunks as were just in use, so the
+        // memory held follows the population down as well as up.
+        while(spareChunks.size() > liveChunkCount) {
+            spareChunks.pop();
+        }
+        for(int i = 0; i < liveChunkCount; i++) {
+            spareChunks.push(chunks[liveChunks[i]]);
+            chunks[liveChunks[i]] = EMPTY_CHUNK;
+        }
+        liveChunkCount = 0;
+        generation = GENERATIONS.incrementAndGet();
+
+        for(int code = 0; code < pools.length; code++) {
+            clearedPoolSizes[code] = Math.max(poolSizes.get(code), 0);
+            poolSizes.set(code, clearedPoolSizes[code]);
+        }
+    }
+
+    /**
+     * Return the number of animals of a species born into the field
+     * (by obtainAnimal) since it was last cleared: for the new state of
+     * a simulation, the births during the step that built it. Animals
+     * born and then killed during the step are included.
+     * @param species The species.
+     * @return The number of births.
+     */
+    public int getBirths(Species species)
+    {
+        int code = species.getCode();
+        return clearedPoolSizes[code] - poolSizes.get(code);
+    }
+
+    /**
+     * Return whether there is at least one live animal of every species in the field.
+     * @return true if every species is still alive.
+     */
+    public boolean isViable()
+    {
+        for(int count : liveCounts) {
+            if(count == 0) {
+                return false;
             }
         }
-        return salmonFound && whaleFound && sardineFound && sharkFound && clownfishFound;
+        return true;
     }
     
     /**
@@ -207,6 +658,36 @@ public class Field
         return animals;
     }
 
+    /**
+     * Return the cell occupied by an animal in the list of animals.
+     * Unlike the animal's own cell, this is known for dead animals too.
+     * @param slot The animal's position in getAnimals().
+     * @return The cell index of the animal.
+     */
+    public int getOccupiedCell(int slot)
+    {
+        return occupiedCells[slot];
+    }
+
+    /**
+     * Return the position in the list of animals of the animal in a cell.
+     * @param index The cell index, which must be occupied.
+     * @return The animal's position in getAnimals().
+     */
+    public int getSlot(int index)
+    {
+        return chunks[index >>> CHUNK_BITS].slots[index & CHUNK_MASK];
+    }
+
+    /**
+     * Return the species that may live in the field.
+     * @return The species table.
+     */
+    public SpeciesTable getSpeciesTable()
+    {
+        return speciesTable;
+    }
+
     /**
      * Return the depth of the field.
      * @return The depth of the field.
@@ -224,4 +705,49 @@ public class Field
     {
         return width;
     }
+
+    /**
+     * Allocate a chunk, or reuse a released one. Locked, as animals may
+     * be placed from several threads at once; another thread may have
+     * allocated the chunk since it was found missing.
+     * @param number The chunk number.
+     * @return The chunk.
+     */
+    private synchronized Chunk allocateChunk(int number)
+    {
+        Chunk chunk = chunks[number];
+        if(chunk == EMPTY_CHUNK) {
+            chunk = spareChunks.isEmpty() ? new Chunk() : spareChunks.pop();
+            if(liveChunkCount == liveChunks.length) {
+                liveChunks = Arrays.copyOf(liveChunks, liveChunkCount * 2);
+            }
+            liveChunks[liveChunkCount++] = number;
+            chunks[number] = chunk;
+        }
+        return chunk;
+    }
+
+    /**
+     * Record the cell of the animal being added to the end of the list
+     * of animals.
+     * @param index The cell index.
+     */
+    private void addOccupiedCell(int index)
+    {
+        if(animals.size() == occupiedCells.length) {
+            occupiedCells = Arrays.copyOf(occupiedCells, occupiedCells.length * 2);
+        }
+        occupiedCells[animals.size()] = index;
+    }
+
+    /**
+     * CHUNK_SIZE consecutive cells of a field.
+     */
+    private static class Chunk
+    {
+        // The animal in each cell, or null.
+        final Animal[] cells = new Animal[CHUNK_SIZE];
+        // For each occupied cell, the position of its animal in the animals list.
+        final int[] slots = new int[CHUNK_SIZE];
+    }
 }
@@ -1,117 +1,50 @@
-import java.util.HashMap;
-import java.util.Map;
-
 /**
- * This class collects and provides some statistical data on the state 
- * of a field. It is flexible: it will create and maintain a counter 
- * for any class of object that is found within the field.
+ * This class provides some statistical data on the state of a field.
+ * The counts come from the live population counters the field keeps
+ * up to date as animals are placed and killed, so no scan of the field
+ * is needed.
  * 
  * @author David J. Barnes and Michael Kölling
- * @version 7.0
+ * @version 7.1
  */
 public class FieldStats
 {
-    // Counters for each type of entity (fox, rabbit, etc.) in the simulation.
-    private final Map<Class<?>, Counter> counters;
-    // Whether the counters are currently up to date.
-    private boolean countsValid;
-
-    /**
-     * Construct a FieldStats object.
-     */
-    public FieldStats()
-    {
-        // Set up a collection for counters for each type of animal that
-        // we might find
-        counters = new HashMap<>();
-        countsValid = true;
-    }
-
     /**
      * Get details of animal what is in the field.
      * @return A string describing what is in the field.
      */
     public String getPopulationDetails(Field field)
     {
-        StringBuilder details = new StringBuilder();
-        if(!countsValid) {
-            generateCounts(field);
-        }
-        for(Class<?> key : counters.keySet()) {
-            Counter info = counters.get(key);
-            details.append(info.getName())
-                   .append(": ")
-                   .append(info.getCount())
-                   .append(' ');
-        }
-        return details.toString();
-    }
-    
-    /**
-     * Invalidate the current set of statistics; reset all 
-     * counts to zero.
-     */
-    public void reset()
-    {
-        countsValid = false;
-        for(Class<?> key : counters.keySet()) {
-            Counter count = counters.get(key);
-            count.reset();
-        }
-    }
-
-    /**
-     * Increment the count for one class of animal.
-     * @param animalClass The class of animal to increment.
-     */
-    public void incrementCount(Class<?> animalClass)
-    {
-        Counter count = counters.get(animalClass);
-        if(count == null) {
-            // We do not have a counter for this species yet.
-            // Create one.
-            count = new Counter(animalClass.getName());
-            counters.put(animalClass, count);
-        }
-        count.increment();
+        return field.getPopulationDetails();
     }
 
     /**
-     * Indicate that an animal count has been completed.
+     * Get details of what was in the field after a step.
+     * @param snapshot A snapshot of the field.
+     * @return A string describing what was in the field.
      */
-    public void countFinished()
+    public String getPopulationDetails(StepSnapshot snapshot)
     {
-        countsValid = true;
+        return snapshot.getPopulationDetails();
     }
 
     /**
      * Determine whether the simulation is still viable.
      * I.e., should it continue to run.
-     * @return true If there is more than one species alive.
+     * @return true If every species is still alive.
      */
     public boolean isViable(Field field)
     {
         return field.isViable();
     }
-    
+
     /**
-     * Generate counts of the number of foxes and rabbits.
-     * These are not kept up to date as foxes and rabbits
-     * are placed in the field, but only when a request
-     * is made for the information.
-     * @param field The field to generate the stats for.
+     * Determine whether the simulation was viable after a step.
+     * @param snapshot A snapshot of the field.
+     * @return true If every species was still alive.
      */
-    private void generateCounts(Field field)
+    public boolean isViable(StepSnapshot snapshot)
     {
-        reset();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Animal animal = field.getAnimalAt(new Location(row, col));
-                if(animal != null) {
-                    incrementCount(animal.getClass());
-                }
-            }
-        }
-        countsValid = true;
+        return snapshot.isViable();
     }
 }
@@ -0,0 +1,137 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds, from which percentiles such
+ * as the median or the 99.9th can be read while durations are still
+ * being recorded.
+ *
+ * Durations below 64 ns are counted exactly. Above that, each power of
+ * two is split into 32 buckets, so a percentile is reported within
+ * about 3% of the true duration, over the whole range of a long, in a
+ * fixed 15 KB of counts. Recording is one atomic increment and never
+ * waits; a reader sees each count as it was at some moment while it
+ * read, so a percentile read during recording may mix in a few of the
+ * durations recorded while it was reading.
+ *
+ * @version 7.1
+ */
+public class LatencyHistogram
+{
+    // The bits of a duration kept within its power of two.
+    private static final int SUB_BITS = 5;
+    // The buckets in each power of two.
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // The number of buckets needed for any long duration.
+    private static final int BUCKETS = (63 - SUB_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+    // The number of durations in each bucket.
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    // The longest duration recorded.
+    private volatile long max;
+
+    /**
+     * Record a duration.
+     * @param nanos The duration in nanoseconds. Negative durations are
+     *              recorded as 0.
+     */
+    public void record(long nanos)
+    {
+        long duration = Math.max(nanos, 0);
+        counts.getAndIncrement(bucketOf(duration));
+        if(duration > max) {
+            max = duration;
+        }
+    }
+
+    /**
+     * @return The number of durations recorded.
+     */
+    public long getCount()
+    {
+        long count = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            count += counts.get(bucket);
+        }
+        return count;
+    }
+
+    /**
+     * Return a percentile of the durations recorded: the duration that
+     * the given fraction of them are no longer than.
+     * @param fraction The fraction, from 0 to 1, such as 0.99 for the
+     *                 99th percentile.
+     * @return The duration in nanoseconds, rounded up to the top of its
+     *         bucket but no longer than the longest recorded, or 0 if
+     *         none have been recorded.
+     */
+    public long getPercentile(double fraction)
+    {
+        if(fraction < 0 || fraction > 1 || Double.isNaN(fraction)) {
+            throw new IllegalArgumentException("The fraction must be between 0 and 1");
+        }
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            snapshot[bucket] = counts.get(bucket);
+            count += snapshot[bucket];
+        }
+        if(count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += snapshot[bucket];
+            if(seen >= rank) {
+                return Math.min(highestIn(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return The longest duration recorded in nanoseconds, or 0 if none
+     *         have been recorded.
+     */
+    public long getMax()
+    {
+        return max;
+    }
+
+    /**
+     * Forget every duration recorded. Durations recorded while this
+     * runs may or may not be forgotten.
+     */
+    public void reset()
+    {
+        for(int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+        max = 0;
+    }
+
+    /**
+     * Return the bucket counting a duration.
+     */
+    private static int bucketOf(long duration)
+    {
+        if(duration < 2 * SUB_BUCKETS) {
+            return (int) duration;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(duration) - SUB_BITS;
+        return shift * SUB_BUCKETS + (int) (duration >>> shift);
+    }
+
+    /**
+     * Return the longest duration a bucket counts.
+     */
+    private static long highestIn(int bucket)
+    {
+        if(bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket - shift * SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
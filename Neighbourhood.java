@@ -0,0 +1,107 @@
+import java.util.Arrays;
+
+/**
+ * The neighbourhoods of the cells of a rectangular grid whose cells are
+ * indexed by row * width + col. Neighbour index offsets are precomputed
+ * for each kind of cell (interior, edge or corner), so finding the
+ * neighbours of a cell needs no bounds checks and allocates nothing.
+ *
+ * @version 7.1
+ */
+public class Neighbourhood
+{
+    // The dimensions of the grid.
+    private final int depth, width;
+    // Index offsets of the adjacent cells, one table for each kind of cell.
+    // See boundaryCode.
+    private final int[][] offsets = new int[16][];
+
+    /**
+     * Compute the neighbourhoods of a grid of the given dimensions.
+     * @param depth The depth of the grid.
+     * @param width The width of the grid.
+     */
+    public Neighbourhood(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        for(int code = 0; code < offsets.length; code++) {
+            offsets[code] = buildOffsets(code >> 2, code & 3);
+        }
+    }
+
+    /**
+     * Return the index offsets of the cells adjacent to the given one.
+     * The returned array is shared and must not be modified.
+     * @param index The cell index (row * width + col).
+     * @return The offsets to add to index to get each adjacent cell.
+     */
+    public int[] getOffsets(int index)
+    {
+        return offsets[boundaryCode(index)];
+    }
+
+    /**
+     * Write the indices of the cells adjacent to the given one into
+     * the buffer, always in the same order.
+     * @param index The cell index (row * width + col).
+     * @param buffer Where to write the adjacent cell indices. Must hold
+     *               at least Field.MAX_NEIGHBOURS entries.
+     * @return The number of adjacent cells written.
+     */
+    public int getAdjacentCells(int index, int[] buffer)
+    {
+        int[] cellOffsets = offsets[boundaryCode(index)];
+        for(int i = 0; i < cellOffsets.length; i++) {
+            buffer[i] = index + cellOffsets[i];
+        }
+        return cellOffsets.length;
+    }
+
+    /**
+     * Classify a cell by which of its sides lie inside the grid.
+     * Bit 0 of each two-bit part is set if there is a row (or column)
+     * before the cell, and bit 1 if there is one after it.
+     * @param index The cell index (row * width + col).
+     * @return The code, from 0 to 15, used to select neighbour offsets.
+     */
+    private int boundaryCode(int index)
+    {
+        int row = index / width;
+        int col = index - row * width;
+        int rowCode = (row > 0 ? 1 : 0) | (row < depth - 1 ? 2 : 0);
+        int colCode = (col > 0 ? 1 : 0) | (col < width - 1 ? 2 : 0);
+        return rowCode << 2 | colCode;
+    }
+
+    /**
+     * Build the table of neighbour offsets for one kind of cell.
+     * @param rowCode Which rows next to the cell exist (see boundaryCode).
+     * @param colCode Which columns next to the cell exist.
+     * @return The index offsets of the adjacent cells.
+     */
+    private int[] buildOffsets(int rowCode, int colCode)
+    {
+        int[] offsets = new int[Field.MAX_NEIGHBOURS];
+        int count = 0;
+        for(int roffset = -1; roffset <= 1; roffset++) {
+            if(inRange(roffset, rowCode)) {
+                for(int coffset = -1; coffset <= 1; coffset++) {
+                    if(inRange(coffset, colCode) && (roffset != 0 || coffset != 0)) {
+                        offsets[count++] = roffset * width + coffset;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * @return Whether a step of the given offset (-1, 0 or 1) stays
+     *         within the grid for a cell with the given boundary code.
+     */
+    private static boolean inRange(int offset, int code)
+    {
+        return offset == 0 || (offset < 0 ? (code & 1) != 0 : (code & 2) != 0);
+    }
+}
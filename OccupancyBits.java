@@ -0,0 +1,231 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Which cells of a grid hold an animal of each species, and which hold
+ * a male of each species, as bit sets packed into longs. A question
+ * about the eight cells around a cell, such as "is a shark next to this
+ * salmon?", then reads three short bit ranges, one per row, instead of
+ * eight animals.
+ *
+ * Bit i stands for cell i, so rows follow each other without padding
+ * and recording a cell needs no division; the bits that wrap onto the
+ * next or previous row are masked off when neighbours are read.
+ *
+ * Like the cells of a Field, the bits are kept in blocks of
+ * Field.CHUNK_SIZE cells, allocated when an animal is first recorded in
+ * one. A block that was never allocated reads as all clear.
+ *
+ * @version 7.1
+ */
+public class OccupancyBits
+{
+    // The bit of a neighbourhood mask for the cell itself.
+    private static final int CENTRE = 1 << 4;
+    // The number of longs holding one bit set within a block.
+    private static final int BLOCK_WORDS = Field.CHUNK_SIZE >>> 6;
+    // The bits of a word index that select a word within its block.
+    private static final int WORD_MASK = BLOCK_WORDS - 1;
+    // The number of bits of a word index that select a word within its block.
+    private static final int WORD_BITS = Field.CHUNK_BITS - 6;
+
+    // The dimensions of the grid.
+    private final int depth, width;
+    // The number of species.
+    private final int speciesCount;
+    // The bits of each block of cells, by block number (cell index >>
+    // Field.CHUNK_BITS), or null for a block with no animals. A block
+    // holds each species' occupied cells, then each species' males.
+    private final long[][] blocks;
+    // The numbers of the allocated blocks, and how many there are.
+    private int[] liveBlocks = new int[16];
+    private int liveBlockCount;
+    // Released blocks, all clear, kept for reuse.
+    private final ArrayDeque<long[]> spareBlocks = new ArrayDeque<>();
+
+    /**
+     * Create empty bit sets for a grid.
+     * @param depth The depth of the grid.
+     * @param width The width of the grid.
+     * @param speciesCount The number of species.
+     */
+    public OccupancyBits(int depth, int width, int speciesCount)
+    {
+        this.depth = depth;
+        this.width = width;
+        this.speciesCount = speciesCount;
+        blocks = new long[(depth * width + Field.CHUNK_SIZE - 1) >>> Field.CHUNK_BITS][];
+    }
+
+    /**
+     * Record an animal in a cell.
+     * @param index The cell index (row * width + col).
+     * @param speciesCode The animal's species code.
+     * @param male Whether the animal is male.
+     */
+    public void set(int index, int speciesCode, boolean male)
+    {
+        long[] block = blocks[index >>> Field.CHUNK_BITS];
+        if(block == null) {
+            block = allocateBlock(index >>> Field.CHUNK_BITS);
+        }
+        int word = (index >>> 6) & WORD_MASK;
+        block[speciesCode * BLOCK_WORDS + word] |= 1L << index;
+        if(male) {
+            block[(speciesCount + speciesCode) * BLOCK_WORDS + word] |= 1L << index;
+        }
+    }
+
+    /**
+     * Remove an animal from a cell.
+     * @param index The cell index (row * width + col).
+     * @param speciesCode The animal's species code.
+     */
+    public void clear(int index, int speciesCode)
+    {
+        long[] block = blocks[index >>> Field.CHUNK_BITS];
+        if(block != null) {
+            int word = (index >>> 6) & WORD_MASK;
+            block[speciesCode * BLOCK_WORDS + word] &= ~(1L << index);
+            block[(speciesCount + speciesCode) * BLOCK_WORDS + word] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * Remove every animal, releasing the blocks for reuse. The cost
+     * depends on the number of blocks in use, not the size of the grid.
+     */
+    public void clearAll()
+    {
+        // Keep only as many spare blocks as were just in use.
+        while(spareBlocks.size() > liveBlockCount) {
+            spareBlocks.pop();
+        }
+        for(int i = 0; i < liveBlockCount; i++) {
+            long[] block = blocks[liveBlocks[i]];
+            Arrays.fill(block, 0);
+            spareBlocks.push(block);
+            blocks[liveBlocks[i]] = null;
+        }
+        liveBlockCount = 0;
+    }
+
+    /**
+     * Return whether an animal of a species, alive or dead, is in one
+     * of the cells adjacent to the given one.
+     * @param index The cell index (row * width + col).
+     * @param speciesCode The species code.
+     * @return true if there is one.
+     */
+    public boolean isAdjacent(int index, int speciesCode)
+    {
+        return neighbourMask(speciesCode, index) != 0;
+    }
+
+    /**
+     * Return the number of animals of a species, alive or dead, in the
+     * cells adjacent to the given one.
+     * @param index The cell index (row * width + col).
+     * @param speciesCode The species code.
+     * @return The number of them.
+     */
+    public int countAdjacent(int index, int speciesCode)
+    {
+        return Integer.bitCount(neighbourMask(speciesCode, index));
+    }
+
+    /**
+     * Write the cells adjacent to the given one that hold a male of a
+     * species, alive or dead, into the buffer.
+     * @param index The cell index (row * width + col).
+     * @param speciesCode The species code.
+     * @param buffer Where to write the cell indices. Must hold at least
+     *               Field.MAX_NEIGHBOURS entries.
+     * @return The number of cells written.
+     */
+    public int getAdjacentMales(int index, int speciesCode, int[] buffer)
+    {
+        int mask = neighbourMask(speciesCount + speciesCode, index);
+        int count = 0;
+        while(mask != 0) {
+            int bit = Integer.numberOfTrailingZeros(mask);
+            buffer[count++] = index + (bit / 3 - 1) * width + (bit % 3 - 1);
+            mask &= mask - 1;
+        }
+        return count;
+    }
+
+    /**
+     * Return the bits of the cells adjacent to a cell: bit 3 * r + c is
+     * set for the cell r - 1 rows down and c - 1 columns across from it.
+     * Cells outside the grid read as clear, and the cell itself is left
+     * out.
+     * @param set The bit set: a species code for its occupied cells, or
+     *            speciesCount plus the code for its males.
+     */
+    private int neighbourMask(int set, int index)
+    {
+        int row = index / width;
+        int col = index - row * width;
+        // The columns that exist on either side of the cell.
+        int columns = (col > 0 ? 1 : 0) | 2 | (col < width - 1 ? 4 : 0);
+        int mask = 0;
+        if(row > 0) {
+            mask = threeBits(set, index - width - 1);
+        }
+        mask |= threeBits(set, index - 1) << 3;
+        if(row < depth - 1) {
+            mask |= threeBits(set, index + width - 1) << 6;
+        }
+        return mask & (columns | columns << 3 | columns << 6) & ~CENTRE;
+    }
+
+    /**
+     * Return bits first, first + 1 and first + 2 of a bit set as bits
+     * 0, 1 and 2. Bits outside the grid read as clear.
+     */
+    private int threeBits(int set, int first)
+    {
+        if(first < 0) {
+            return (int) (word(set, 0) & 3) << 1;
+        }
+        int wordIndex = first >>> 6;
+        int shift = first & 63;
+        long value = word(set, wordIndex) >>> shift;
+        if(shift > 61) {
+            value |= word(set, wordIndex + 1) << (64 - shift);
+        }
+        return (int) (value & 7);
+    }
+
+    /**
+     * Return a word of a bit set, or 0 if its block is not allocated or
+     * it is past the end of the grid.
+     */
+    private long word(int set, int wordIndex)
+    {
+        int number = wordIndex >>> WORD_BITS;
+        if(number >= blocks.length) {
+            return 0;
+        }
+        long[] block = blocks[number];
+        return block == null ? 0 : block[set * BLOCK_WORDS + (wordIndex & WORD_MASK)];
+    }
+
+    /**
+     * Allocate a block, or reuse a released one.
+     * @param number The block number.
+     * @return The block.
+     */
+    private long[] allocateBlock(int number)
+    {
+        long[] block = spareBlocks.isEmpty() ? new long[2 * speciesCount * BLOCK_WORDS]
+                                             : spareBlocks.pop();
+        if(liveBlockCount == liveBlocks.length) {
+            liveBlocks = Arrays.copyOf(liveBlocks, liveBlockCount * 2);
+        }
+        liveBlocks[liveBlockCount++] = number;
+        blocks[number] = block;
+        return block;
+    }
+}
@@ -0,0 +1,218 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A step engine that splits the field into square tiles and updates
+ * the tiles in parallel on a fork/join pool.
+ * 
+ * An acting animal reads and writes the cells next to its own, in both
+ * fields. An animal it kills may already have moved one cell further in
+ * the next field, so a kill can change what is seen in a cell two away.
+ * The tiles are coloured in a repeating 2 x 2 checkerboard pattern and
+ * only tiles of one colour are updated at a time. Any two tiles of the
+ * same colour are at least a whole tile apart, so with tiles at least
+ * three cells wide, animals that act at the same time are at least four
+ * cells apart and never touch the same cells or animals.
+ * 
+ * Within a tile, animals act in cell order, and each animal draws its
+ * random numbers from its own stream (see StepContext). The results
+ * therefore depend on the seed but not on the number of threads.
+ *
+ * @version 7.1
+ */
+public class ParallelStepEngine implements StepEngine
+{
+    // The default width and height of a tile, in cells.
+    public static final int DEFAULT_TILE_SIZE = 32;
+    // The smallest tile size for which animals in tiles of the same
+    // colour are more than three cells apart: far enough that one
+    // cannot kill an animal in a cell that the other looks at.
+    private static final int MIN_TILE_SIZE = 3;
+    // The number of tiles a task updates itself rather than splitting.
+    private static final int TILES_PER_TASK = 4;
+    // The number of tile colours.
+    private static final int COLOURS = 4;
+
+    // The threads that update the tiles.
+    private final ForkJoinPool pool;
+    // The width and height of a tile, in cells.
+    private final int tileSize;
+    // The seed from which every tile's random numbers are derived.
+    private final long seed;
+
+    // The field size the tile layout was built for.
+    private int depth, width;
+    // The number of rows and columns of tiles.
+    private int tileRows, tileCols;
+    // The tiles of each colour, as tile numbers (tileRow * tileCols + tileCol).
+    private int[][] tilesByColour;
+    // The working context of each tile, reused every step.
+    private StepContext[] contexts;
+
+    /**
+     * Create a parallel engine with the default tile size.
+     * @param threads The number of threads to update tiles with.
+     * @param seed The seed for the animals' random decisions.
+     */
+    public ParallelStepEngine(int threads, long seed)
+    {
+        this(threads, DEFAULT_TILE_SIZE, seed);
+    }
+
+    /**
+     * Create a parallel engine.
+     * @param threads The number of threads to update tiles with.
+     * @param tileSize The width and height of a tile, in cells.
+     * @param seed The seed for the animals' random decisions.
+     */
+    public ParallelStepEngine(int threads, int tileSize, long seed)
+    {
+        if(threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed: " + threads);
+        }
+        if(tileSize < MIN_TILE_SIZE) {
+            throw new IllegalArgumentException("Tiles must be at least " + MIN_TILE_SIZE
+                                               + " cells wide: " + tileSize);
+        }
+        pool = new ForkJoinPool(threads);
+        this.tileSize = tileSize;
+        this.seed = seed;
+    }
+
+    /**
+     * Update every tile of the field, one colour at a time.
+     * @param currentField The current state of the field.
+     * @param nextFieldState An empty field to be filled with the next state.
+     * @param conditions The conditions for this step.
+     * @param step The number of the step being computed.
+     */
+    public void step(Field currentField, Field nextFieldState, Conditions conditions, int step)
+    {
+        prepareTiles(currentField);
+        nextFieldState.beginConcurrentPlacement();
+        for(int[] tiles : tilesByColour) {
+            pool.invoke(new TileTask(tiles, 0, tiles.length,
+                                     currentField, nextFieldState, conditions, step));
+        }
+        nextFieldState.finishConcurrentPlacement();
+    }
+
+    /**
+     * Let every animal in one tile act, in cell order.
+     * @param tile The tile number.
+     * @param currentField The current state of the field.
+     * @param nextFieldState The next state of the field.
+     * @param conditions The conditions for this step.
+     * @param step The number of the step being computed.
+     */
+    private void updateTile(int tile, Field currentField, Field nextFieldState,
+                            Conditions conditions, int step)
+    {
+        StepContext context = contexts[tile];
+        context.startStep(step);
+        int top = (tile / tileCols) * tileSize;
+        int left = (tile % tileCols) * tileSize;
+        int bottom = Math.min(top + tileSize, depth);
+        int right = Math.min(left + tileSize, width);
+        for(int row = top; row < bottom; row++) {
+            int end = currentField.indexOf(row, right);
+            int index = currentField.nextOccupiedCell(currentField.indexOf(row, left), end);
+            while(index < end) {
+                context.startAct(index);
+                currentField.getAnimalAt(index).act(currentField, nextFieldState, conditions,
+                                                    context);
+                index = currentField.nextOccupiedCell(index + 1, end);
+            }
+        }
+    }
+
+    /**
+     * Build the tile layout if the field size has changed.
+     * @param field The field about to be updated.
+     */
+    private void prepareTiles(Field field)
+    {
+        if(contexts != null && depth == field.getDepth() && width == field.getWidth()) {
+            return;
+        }
+        depth = field.getDepth();
+        width = field.getWidth();
+        tileRows = (depth + tileSize - 1) / tileSize;
+        tileCols = (width + tileSize - 1) / tileSize;
+
+        int[] counts = new int[COLOURS];
+        for(int tile = 0; tile < tileRows * tileCols; tile++) {
+            counts[colourOf(tile)]++;
+        }
+        tilesByColour = new int[COLOURS][];
+        for(int colour = 0; colour < COLOURS; colour++) {
+            tilesByColour[colour] = new int[counts[colour]];
+            counts[colour] = 0;
+        }
+        contexts = new StepContext[tileRows * tileCols];
+        for(int tile = 0; tile < contexts.length; tile++) {
+            int colour = colourOf(tile);
+            tilesByColour[colour][counts[colour]++] = tile;
+            contexts[tile] = new StepContext(seed);
+        }
+    }
+
+    /**
+     * @return The colour (0 to 3) of the given tile.
+     */
+    private int colourOf(int tile)
+    {
+        int tileRow = tile / tileCols;
+        int tileCol = tile % tileCols;
+        return (tileRow & 1) << 1 | (tileCol & 1);
+    }
+
+    /**
+     * A fork/join task that updates a range of tiles of one colour,
+     * splitting the range between threads while it is large. Tasks
+     * are never serialized, though RecursiveAction is Serializable.
+     */
+    @SuppressWarnings("serial")
+    private class TileTask extends RecursiveAction
+    {
+        private final int[] tiles;
+        private final int from, to;
+        private final Field currentField, nextFieldState;
+        private final Conditions conditions;
+        private final int step;
+
+        /**
+         * Create a task for tiles[from] to tiles[to - 1].
+         */
+        public TileTask(int[] tiles, int from, int to, Field currentField,
+                        Field nextFieldState, Conditions conditions, int step)
+        {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+            this.currentField = currentField;
+            this.nextFieldState = nextFieldState;
+            this.conditions = conditions;
+            this.step = step;
+        }
+
+        /**
+         * Update the tiles, or split them into two tasks.
+         */
+        protected void compute()
+        {
+            if(to - from <= TILES_PER_TASK) {
+                for(int i = from; i < to; i++) {
+                    updateTile(tiles[i], currentField, nextFieldState, conditions, step);
+                }
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(tiles, from, middle, currentField, nextFieldState,
+                                       conditions, step),
+                          new TileTask(tiles, middle, to, currentField, nextFieldState,
+                                       conditions, step));
+            }
+        }
+    }
+}
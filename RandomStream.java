@@ -0,0 +1,81 @@
+/**
+ * A small, fast stream of pseudo-random numbers (the SplitMix64
+ * generator used by java.util.SplittableRandom). Unlike SplittableRandom
+ * a stream can be reseeded, so one stream can be reused for many
+ * decisions without allocating. A stream must only be used by one
+ * thread at a time.
+ *
+ * @version 7.1
+ */
+public class RandomStream
+{
+    // The step between successive states; an odd constant.
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    // The current state of the stream.
+    private long state;
+
+    /**
+     * Create a stream with the given seed.
+     * @param seed The seed.
+     */
+    public RandomStream(long seed)
+    {
+        state = seed;
+    }
+
+    /**
+     * Restart the stream from a new seed.
+     * @param seed The seed.
+     */
+    public void setSeed(long seed)
+    {
+        state = seed;
+    }
+
+    /**
+     * @return The next pseudo-random long.
+     */
+    public long nextLong()
+    {
+        state += GOLDEN_GAMMA;
+        return Randomizer.mix(state);
+    }
+
+    /**
+     * Return a pseudo-random int between 0 (inclusive) and bound (exclusive).
+     * @param bound The upper bound. Must be positive.
+     * @return The next pseudo-random int in the range.
+     */
+    public int nextInt(int bound)
+    {
+        // Scale the top 32 bits into the range; the bias is negligible
+        // for the small bounds used by the simulation.
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * @return A pseudo-random double between 0.0 (inclusive) and 1.0 (exclusive).
+     */
+    public double nextDouble()
+    {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @return A pseudo-random boolean.
+     */
+    public boolean nextBoolean()
+    {
+        return nextLong() < 0;
+    }
+
+    /**
+     * Split off a new stream that is independent of this one.
+     * @return The new stream.
+     */
+    public RandomStream split()
+    {
+        return new RandomStream(nextLong());
+    }
+}
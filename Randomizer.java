@@ -1,21 +1,19 @@
-import java.util.Random;
-
 /**
- * Provide control over the randomization of the simulation. By using the shared, fixed-seed 
- * randomizer, repeated runs will perform exactly the same (which helps with testing). Set 
- * 'useShared' to false to get different random behaviour every time.
+ * Provide control over the randomization of the simulation. There is no
+ * shared random number generator: every random decision is drawn from a
+ * RandomStream whose seed is derived from the simulation seed, the step
+ * and the cell the decision is made for. Runs with the same seed
+ * therefore perform exactly the same (which helps with testing), whatever
+ * order the animals act in and however many threads are used. Use a
+ * different seed to get different random behaviour.
  * 
  * @author David J. Barnes and Michael Kölling
- * @version 7.0
+ * @version 7.1
  */
 public class Randomizer
 {
     // The default seed for control of randomization.
-    private static final int SEED = 1111;
-    // A shared Random object, if required.
-    private static final Random rand = new Random(SEED);
-    // Determine whether a shared random generator is to be provided.
-    private static final boolean useShared = true;
+    public static final long SEED = 1111;
 
     /**
      * Constructor for objects of class Randomizer
@@ -25,28 +23,28 @@ public class Randomizer
     }
 
     /**
-     * Provide a random generator.
-     * @return A random object.
+     * Derive the seed of the stream for one decision-maker at one step.
+     * Different keys and steps give unrelated seeds.
+     * @param seed The simulation seed.
+     * @param step The step, with step 0 used to populate the field.
+     * @param key Identifies the decision-maker, usually its cell index.
+     * @return The seed for the stream.
      */
-    public static Random getRandom()
+    public static long seedFor(long seed, long step, long key)
     {
-        if(useShared) {
-            return rand;
-        }
-        else {
-            return new Random();
-        }
+        return mix(mix(mix(seed) + step) + key);
     }
-    
+
     /**
-     * Reset the randomization.
-     * This will have no effect if randomization is not 
-     * through a shared Random generator.
+     * Scramble the bits of a value (the SplitMix64 finalizer), so
+     * that seeds for neighbouring steps and keys are unrelated.
+     * @param z The value to scramble.
+     * @return The scrambled value.
      */
-    public static void reset()
+    public static long mix(long z)
     {
-        if(useShared) {
-            rand.setSeed(SEED);
-        }
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
 }
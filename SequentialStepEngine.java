@@ -0,0 +1,36 @@
+/**
+ * The default step engine. Animals act one at a time, in the order of
+ * the field's animal list.
+ *
+ * @version 7.1
+ */
+public class SequentialStepEngine implements StepEngine
+{
+    // The working state shared by every animal, as they act one at a time.
+    private final StepContext context;
+
+    /**
+     * Create a sequential engine.
+     * @param seed The seed for the animals' random decisions.
+     */
+    public SequentialStepEngine(long seed)
+    {
+        context = new StepContext(seed);
+    }
+
+    /**
+     * Let every animal in the current field act once, in list order.
+     * @param currentField The current state of the field.
+     * @param nextFieldState An empty field to be filled with the next state.
+     * @param conditions The conditions for this step.
+     * @param step The number of the step being computed.
+     */
+    public void step(Field currentField, Field nextFieldState, Conditions conditions, int step)
+    {
+        context.startStep(step);
+        for(Animal anAnimal : currentField.getAnimals()) {
+            context.startAct(anAnimal.getCell());
+            anAnimal.act(currentField, nextFieldState, conditions, context);
+        }
+    }
+}
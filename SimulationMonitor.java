@@ -0,0 +1,300 @@
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * An observer that publishes a simulation's progress over JMX, as the
+ * SimulationMonitorMXBean "habitat:type=Simulation,name=simulation-n",
+ * and lets JMX tools pause, resume and pace it.
+ *
+ * Everything is recorded on the simulation thread without taking a
+ * lock, so the simulation never waits for a JMX client:
+ *   - each step's compute time goes into a LatencyHistogram;
+ *   - the step rate is worked out about once a second and published
+ *     in a volatile field;
+ *   - the populations, births, deaths and allocation of each step go
+ *     into a small immutable sample published in a volatile field, so
+ *     a client always reads the figures of a single step.
+ *
+ * @version 7.1
+ */
+public class SimulationMonitor implements StepObserver, SimulationMonitorMXBean
+{
+    // The time over which the step rate is measured.
+    private static final long RATE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    // The source of the numbers in the monitors' names.
+    private static final AtomicInteger MONITORS = new AtomicInteger();
+
+    // The simulation monitored.
+    private final Simulator simulator;
+    // The species in the simulation.
+    private final SpeciesTable speciesTable;
+    // The name the monitor is registered under.
+    private final ObjectName name;
+    // How long steps took to compute.
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    // Measures the memory allocated by the simulation thread, or null
+    // if the JVM cannot.
+    private final com.sun.management.ThreadMXBean threads;
+
+    // The steps completed while monitored.
+    private volatile long stepCount;
+    // The measured steps per second.
+    private volatile double stepRate;
+    // When the latest step completed.
+    private volatile long lastStepTime;
+    // The latest sample published.
+    private volatile Sample sample;
+
+    // The following are only used on the simulation thread.
+    // When the step rate was last worked out, and the step count then.
+    private long rateStart;
+    private long rateStartCount;
+    // The step of the latest step reported, or the step the simulation
+    // had reached when the monitor was created.
+    private int lastStep;
+    // The bytes the simulation thread had allocated after the latest step.
+    private long lastAllocated;
+
+    /**
+     * Create a monitor for a simulation. It must be added to the
+     * simulation as an observer, and registered to be seen over JMX.
+     * @param simulator The simulation to monitor.
+     */
+    public SimulationMonitor(Simulator simulator)
+    {
+        this.simulator = simulator;
+        speciesTable = simulator.getSpeciesTable();
+        try {
+            name = new ObjectName("habitat:type=Simulation,name=simulation-"
+                                  + MONITORS.incrementAndGet());
+        }
+        catch(JMException e) {
+            throw new IllegalStateException("Invalid monitor name", e);
+        }
+        if(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean counter
+           && counter.isThreadAllocatedMemorySupported()) {
+            counter.setThreadAllocatedMemoryEnabled(true);
+            threads = counter;
+        }
+        else {
+            threads = null;
+        }
+        int speciesCount = speciesTable.size();
+        lastStep = simulator.getStep();
+        int[] counts = new int[speciesCount];
+        simulator.getField().getLiveCounts(counts);
+        sample = new Sample(lastStep, counts, new int[speciesCount], new int[speciesCount], -1);
+        // Measure the first step's allocation from here, not from when
+        // the thread started.
+        lastAllocated = threads == null ? -1 : threads.getCurrentThreadAllocatedBytes();
+        rateStart = System.nanoTime();
+    }
+
+    /**
+     * Register the monitor with the platform MBean server, so JMX tools
+     * connected to this JVM can see it.
+     * @return The name it was registered under.
+     * @throws IllegalStateException If it cannot be registered.
+     */
+    public ObjectName register()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, name);
+        }
+        catch(JMException e) {
+            throw new IllegalStateException("Cannot register " + name, e);
+        }
+        return name;
+    }
+
+    /**
+     * Remove the monitor from the platform MBean server, if registered.
+     */
+    public void unregister()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if(server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        catch(JMException e) {
+            throw new IllegalStateException("Cannot unregister " + name, e);
+        }
+    }
+
+    /**
+     * Record a step: its compute time, the step rate, and a sample of
+     * its populations, births, deaths and allocation.
+     */
+    public void stepCompleted(int step, Field field)
+    {
+        long now = System.nanoTime();
+        long allocated = threads == null ? -1 : threads.getCurrentThreadAllocatedBytes();
+        // Steps that do not follow the previous one, such as a reset,
+        // have no compute time, births or deaths.
+        boolean followsLast = step == lastStep + 1;
+        if(followsLast) {
+            latencies.record(simulator.getLastStepTime());
+            stepCount++;
+        }
+        lastStepTime = now;
+        if(now - rateStart >= RATE_INTERVAL) {
+            stepRate = (stepCount - rateStartCount) * (double) TimeUnit.SECONDS.toNanos(1)
+                       / (now - rateStart);
+            rateStart = now;
+            rateStartCount = stepCount;
+        }
+
+        int[] lastCounts = sample.counts;
+        int[] counts = new int[lastCounts.length];
+        int[] births = new int[counts.length];
+        int[] deaths = new int[counts.length];
+        field.getLiveCounts(counts);
+        if(followsLast) {
+            for(Species species : speciesTable.getAll()) {
+                int code = species.getCode();
+                births[code] = field.getBirths(species);
+                deaths[code] = lastCounts[code] + births[code] - counts[code];
+            }
+        }
+        long bytes = followsLast && allocated >= 0 ? allocated - lastAllocated : -1;
+        sample = new Sample(step, counts, births, deaths, bytes);
+        lastStep = step;
+        // Leave out what the monitor itself allocated.
+        lastAllocated = threads == null ? -1 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    public int getStep()
+    {
+        return sample.step;
+    }
+
+    public long getStepCount()
+    {
+        return stepCount;
+    }
+
+    public double getStepRate()
+    {
+        return System.nanoTime() - lastStepTime > 2 * RATE_INTERVAL ? 0 : stepRate;
+    }
+
+    public long getStepLatencyP50()
+    {
+        return latencies.getPercentile(0.5);
+    }
+
+    public long getStepLatencyP99()
+    {
+        return latencies.getPercentile(0.99);
+    }
+
+    public long getStepLatencyP999()
+    {
+        return latencies.getPercentile(0.999);
+    }
+
+    public long getStepLatencyMax()
+    {
+        return latencies.getMax();
+    }
+
+    public Map<String, Integer> getPopulations()
+    {
+        return bySpecies(sample.counts);
+    }
+
+    public Map<String, Integer> getBirths()
+    {
+        return bySpecies(sample.births);
+    }
+
+    public Map<String, Integer> getDeaths()
+    {
+        return bySpecies(sample.deaths);
+    }
+
+    public long getAllocatedBytesPerStep()
+    {
+        return sample.allocatedBytes;
+    }
+
+    public double getTargetStepRate()
+    {
+        return simulator.getScheduler().getStepsPerSecond();
+    }
+
+    public void setTargetStepRate(double stepsPerSecond)
+    {
+        simulator.getScheduler().setStepsPerSecond(stepsPerSecond);
+    }
+
+    public boolean isPaused()
+    {
+        return simulator.getScheduler().isPaused();
+    }
+
+    public void pause()
+    {
+        simulator.getScheduler().pause();
+    }
+
+    public void resume()
+    {
+        simulator.getScheduler().resume();
+    }
+
+    public void step()
+    {
+        simulator.getScheduler().step();
+    }
+
+    public void resetLatencies()
+    {
+        latencies.reset();
+    }
+
+    /**
+     * Return per-species values keyed by the species' display names.
+     */
+    private Map<String, Integer> bySpecies(int[] values)
+    {
+        Map<String, Integer> map = new LinkedHashMap<>();
+        for(Species species : speciesTable.getAll()) {
+            map.put(species.getDisplayName(), values[species.getCode()]);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * The figures of one step, as published to JMX clients. Never
+     * changed once published.
+     */
+    private static class Sample
+    {
+        // The step.
+        final int step;
+        // The live animals, births and deaths of each species.
+        final int[] counts, births, deaths;
+        // The bytes allocated for the step, or -1 if unknown.
+        final long allocatedBytes;
+
+        Sample(int step, int[] counts, int[] births, int[] deaths, long allocatedBytes)
+        {
+            this.step = step;
+            this.counts = counts;
+            this.births = births;
+            this.deaths = deaths;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+}
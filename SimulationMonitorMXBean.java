@@ -0,0 +1,110 @@
+import java.util.Map;
+
+/**
+ * The management interface of a running simulation, as published over
+ * JMX by a SimulationMonitor. Tools such as JConsole or VisualVM show
+ * the attributes and can call the operations.
+ *
+ * Durations are in nanoseconds. Per-species values are keyed by the
+ * species' display names, in the order of the species table.
+ *
+ * @version 7.1
+ */
+public interface SimulationMonitorMXBean
+{
+    /**
+     * @return The step the simulation has reached.
+     */
+    int getStep();
+
+    /**
+     * @return The steps completed while monitored, including any since
+     *         a reset.
+     */
+    long getStepCount();
+
+    /**
+     * @return The steps completed per second, over about the last
+     *         second, or 0 if the simulation is not stepping.
+     */
+    double getStepRate();
+
+    /**
+     * @return The median time to compute a step.
+     */
+    long getStepLatencyP50();
+
+    /**
+     * @return The 99th percentile of the time to compute a step.
+     */
+    long getStepLatencyP99();
+
+    /**
+     * @return The 99.9th percentile of the time to compute a step.
+     */
+    long getStepLatencyP999();
+
+    /**
+     * @return The longest time taken to compute a step.
+     */
+    long getStepLatencyMax();
+
+    /**
+     * @return The live animals of each species after the latest step.
+     */
+    Map<String, Integer> getPopulations();
+
+    /**
+     * @return The animals of each species born in the latest step.
+     */
+    Map<String, Integer> getBirths();
+
+    /**
+     * @return The animals of each species that died in the latest step.
+     */
+    Map<String, Integer> getDeaths();
+
+    /**
+     * @return The bytes allocated by the simulation thread for the
+     *         latest step, including its observers, or -1 if the JVM
+     *         cannot tell.
+     */
+    long getAllocatedBytesPerStep();
+
+    /**
+     * @return The target steps per second, or 0 for as fast as possible.
+     */
+    double getTargetStepRate();
+
+    /**
+     * Change the speed of the simulation.
+     * @param stepsPerSecond The target steps per second, or 0 for as
+     *                       fast as possible.
+     */
+    void setTargetStepRate(double stepsPerSecond);
+
+    /**
+     * @return Whether the simulation is paused.
+     */
+    boolean isPaused();
+
+    /**
+     * Stop the simulation before its next step.
+     */
+    void pause();
+
+    /**
+     * Let a paused simulation carry on.
+     */
+    void resume();
+
+    /**
+     * Let a paused simulation take one more step.
+     */
+    void step();
+
+    /**
+     * Forget the step latencies recorded so far.
+     */
+    void resetLatencies();
+}
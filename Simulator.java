@@ -1,8 +1,12 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A simple predator-prey simulator, based on a rectangular field containing 
- * salmons and whales.
+ * the species of a SpeciesTable.
  * 
  * @author David J. Barnes and Michael Kölling
  * @version 7.1
@@ -14,25 +18,380 @@ public class Simulator
     private static final int DEFAULT_WIDTH = 120;
     // The default depth of the grid.
     private static final int DEFAULT_DEPTH = 80;
-    // The probability that a whale will be created in any given grid position.
-    private static final double WHALE_CREATION_PROBABILITY = 0.04;
-    // The probability that a salmon will be created in any given position.
-    private static final double SALMON_CREATION_PROBABILITY = 0.12;   
-    // The probability that a shark will be created in any given position.
-    private static final double SHARK_CREATION_PROBABILITY = 0.05;
-    // The probability that a sardine will be created in any given position.
-    private static final double SARDINE_CREATION_PROBABILITY = 0.12;
-    // The probability that a clownfish will be created in any given position.
-    private static final double CLOWNFISH_CREATION_PROBABILITY = 0.12;
+    // The number of steps run from the command line by default.
+    private static final int DEFAULT_STEPS = 700;
+    // The steps per second of a simulation shown in its own window.
+    private static final double DEFAULT_VIEW_RATE = 20;
+    // How to run the simulation from the command line.
+    private static final String USAGE =
+        "Usage: java Simulator [--depth rows] [--width cols] [--steps n]"
+        + " [--seed n] [--observers view,stats,jmx] [--stats-csv file] [--stats-bin file]"
+        + " [--sample n] [--species file] [--resume file] [--save file] [--record file]"
+        + " [--rate steps-per-second] [--fps frames-per-second] [--pipeline]"
+        + " [--threads n [--tile cells] | --store [--off-heap | --map directory]]";
     
     // The current time of day
     private Conditions conditions;
     // The current state of the field.
     private Field field;
+    // A spare field, reused to build the next state of the field.
+    private Field nextFieldState;
     // The current step of the simulation.
     private int step;
-    // A graphical view of the simulation.
+    // A graphical view of the simulation, or null when running headless.
     private final SimulatorView view;
+    // Everything told about the progress of the simulation. Observers
+    // may be added and removed from other threads while it runs.
+    private final List<StepObserver> observers = new CopyOnWriteArrayList<>();
+    // The seed from which all of the simulation's random decisions derive.
+    private final long seed;
+    // The species in the simulation.
+    private final SpeciesTable speciesTable;
+    // How the animals are updated each step.
+    private StepEngine engine;
+    // When steps are taken and the view is updated.
+    private final TickScheduler scheduler;
+    // How long the last step took to compute, in nanoseconds.
+    private long lastStepTime;
+
+    /**
+     * Run a headless simulation from the command line and report how
+     * fast it ran. All options are optional:
+     *   --depth and --width give the size of the field,
+     *   --steps the number of steps to run,
+     *   --seed the seed for the simulation's random decisions,
+     *   --observers a comma-separated list of observers to attach
+     *   ("view" for the graphical view, "stats" for console statistics,
+     *   "jmx" to publish the run's progress over JMX with a
+     *   SimulationMonitor),
+     *   --stats-csv and --stats-bin files to write statistics to as CSV
+     *   or binary records, --sample how often (in steps) statistics are
+     *   recorded, --species a species file to use instead of the
+     *   default species.properties,
+     *   --resume a snapshot to resume instead of starting a new
+     *   simulation (its size and seed replace --depth, --width and
+     *   --seed), --save a file to save a snapshot to after the run,
+     *   --record a file to record the run's trajectory to, for replay
+     *   with TrajectoryPlayer,
+     *   --rate the steps to run per second (by default, as many as
+     *   possible), --fps the most times per second the view is updated,
+     *   --threads the number of threads for the parallel step engine
+     *   (without it, animals are updated on a single thread),
+     *   --tile the tile size used by the parallel step engine,
+     *   --pipeline to update the statistics and the view on threads of
+     *   their own, overlapping the next step (see StepPipeline; this
+     *   takes no value, and shows every step, so not with --fps), and
+     *   --store to keep the animals in an EntityStore instead of as
+     *   objects (this takes no value, and supports only "stats"), with
+     *   --off-heap to keep the store and its grids outside the heap
+     *   (no value either) or --map a directory to map them from files
+     *   in, where another process can inspect them (see StoreMemory).
+     * @param args The command line options.
+     */
+    public static void main(String[] args)
+    {
+        int depth = DEFAULT_DEPTH;
+        int width = DEFAULT_WIDTH;
+        int steps = DEFAULT_STEPS;
+        long seed = Randomizer.SEED;
+        String[] observerNames = {};
+        int threads = 0;
+        int tileSize = ParallelStepEngine.DEFAULT_TILE_SIZE;
+        boolean useStore = false;
+        boolean pipelined = false;
+        boolean offHeap = false;
+        String mapDirectory = null;
+        String csvFile = null;
+        String binaryFile = null;
+        int sampleInterval = 1;
+        String speciesFile = null;
+        String resumeFile = null;
+        String saveFile = null;
+        String recordFile = null;
+        double rate = 0;
+        double fps = 0;
+        try {
+            for(int i = 0; i < args.length; i += 2) {
+                if(args[i].equals("--store")) {
+                    useStore = true;
+                    i--;
+                    continue;
+                }
+                if(args[i].equals("--off-heap")) {
+                    offHeap = true;
+                    i--;
+                    continue;
+                }
+                if(args[i].equals("--pipeline")) {
+                    pipelined = true;
+                    i--;
+                    continue;
+                }
+                if(i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                String value = args[i + 1];
+                switch(args[i]) {
+                    case "--depth" -> depth = Integer.parseInt(value);
+                    case "--width" -> width = Integer.parseInt(value);
+                    case "--steps" -> steps = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--observers" -> observerNames = value.split(",");
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    case "--tile" -> tileSize = Integer.parseInt(value);
+                    case "--stats-csv" -> csvFile = value;
+                    case "--stats-bin" -> binaryFile = value;
+                    case "--sample" -> sampleInterval = Integer.parseInt(value);
+                    case "--species" -> speciesFile = value;
+                    case "--resume" -> resumeFile = value;
+                    case "--save" -> saveFile = value;
+                    case "--record" -> recordFile = value;
+                    case "--rate" -> rate = Double.parseDouble(value);
+                    case "--fps" -> fps = Double.parseDouble(value);
+                    case "--map" -> mapDirectory = value;
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            for(String name : observerNames) {
+                if(!name.equals("view") && !name.equals("stats") && !name.equals("jmx")) {
+                    throw new IllegalArgumentException("Unknown observer " + name);
+                }
+                if(useStore && !name.equals("stats")) {
+                    throw new IllegalArgumentException("--store does not support the " + name);
+                }
+            }
+            if(useStore && threads > 0) {
+                throw new IllegalArgumentException("--store runs on a single thread");
+            }
+            if(useStore && (resumeFile != null || saveFile != null || recordFile != null)) {
+                throw new IllegalArgumentException(
+                    "--store does not support snapshots or recording");
+            }
+            if(pipelined && (useStore || fps > 0)) {
+                throw new IllegalArgumentException("--pipeline does not support --store or --fps");
+            }
+            if((offHeap || mapDirectory != null) && !useStore) {
+                throw new IllegalArgumentException("--off-heap and --map need --store");
+            }
+            if(offHeap && mapDirectory != null) {
+                throw new IllegalArgumentException("Use either --off-heap or --map");
+            }
+        }
+        catch(IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        SpeciesTable speciesTable = null;
+        try {
+            speciesTable = speciesFile == null ? SpeciesTable.getDefault()
+                                               : SpeciesTable.load(Path.of(speciesFile));
+        }
+        catch(IOException | IllegalArgumentException e) {
+            System.err.println("Cannot load species: " + e.getMessage());
+            System.exit(1);
+        }
+
+        List<StatsSink> sinks = new ArrayList<>();
+        try {
+            if(Arrays.asList(observerNames).contains("stats")) {
+                sinks.add(new ConsoleStatsSink(speciesTable));
+            }
+            if(csvFile != null) {
+                sinks.add(new CsvStatsSink(Path.of(csvFile), speciesTable));
+            }
+            if(binaryFile != null) {
+                sinks.add(new BinaryStatsSink(Path.of(binaryFile), speciesTable));
+            }
+        }
+        catch(IOException e) {
+            System.err.println("Cannot write statistics: " + e.getMessage());
+            System.exit(1);
+        }
+        StatsRecorder recorder = null;
+        if(!sinks.isEmpty()) {
+            try {
+                recorder = new StatsRecorder(speciesTable, sinks, sampleInterval,
+                                             StatsRecorder.DEFAULT_CAPACITY);
+            }
+            catch(IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if(useStore) {
+            StoreMemory memory = StoreMemory.onHeap();
+            try {
+                if(offHeap) {
+                    memory = StoreMemory.offHeap();
+                }
+                else if(mapDirectory != null) {
+                    memory = StoreMemory.mapped(Path.of(mapDirectory));
+                }
+                runStore(depth, width, steps, seed, speciesTable, recorder, memory);
+                memory.close();
+            }
+            catch(IOException | UncheckedIOException e) {
+                System.err.println("Cannot map the world: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        Simulator simulator = null;
+        if(resumeFile == null) {
+            simulator = new Simulator(depth, width, false, seed, speciesTable);
+        }
+        else {
+            try {
+                simulator = resume(Path.of(resumeFile), false, speciesTable);
+            }
+            catch(IOException e) {
+                System.err.println("Cannot resume: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        try {
+            if(threads > 0) {
+                simulator.setStepEngine(new ParallelStepEngine(
+                    threads, tileSize, simulator.getSeed()));
+            }
+            simulator.getScheduler().setStepsPerSecond(rate);
+            simulator.getScheduler().setFramesPerSecond(fps);
+        }
+        catch(IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        Field field = simulator.field;
+        SimulatorView view = null;
+        if(Arrays.asList(observerNames).contains("view")) {
+            view = new SimulatorView(field.getDepth(), field.getWidth(), speciesTable);
+        }
+        if(pipelined) {
+            simulator.addObserver(pipeline(speciesTable, recorder, view));
+        }
+        else {
+            if(view != null) {
+                simulator.addObserver(simulator.getScheduler().throttle(view));
+            }
+            if(recorder != null) {
+                simulator.addObserver(recorder);
+            }
+        }
+        if(Arrays.asList(observerNames).contains("jmx")) {
+            SimulationMonitor monitor = new SimulationMonitor(simulator);
+            monitor.register();
+            simulator.addObserver(monitor);
+        }
+        TrajectoryRecorder trajectory = null;
+        if(recordFile != null) {
+            try {
+                trajectory = new TrajectoryRecorder(Path.of(recordFile), field.getDepth(),
+                                                    field.getWidth(), speciesTable);
+            }
+            catch(IOException e) {
+                System.err.println("Cannot record: " + e.getMessage());
+                System.exit(1);
+            }
+            // Record the starting state as well as each step.
+            trajectory.stepCompleted(simulator.getStep(), field);
+            simulator.addObserver(trajectory);
+        }
+
+        int firstStep = simulator.getStep();
+        long start = System.nanoTime();
+        simulator.simulate(steps);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if(recorder != null) {
+            recorder.close();
+        }
+        if(trajectory != null) {
+            try {
+                trajectory.close();
+            }
+            catch(IOException e) {
+                System.err.println("Cannot record: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        int ran = simulator.getStep() - firstStep;
+        System.out.printf("Ran %d steps on a %d x %d field in %.3f s (%.1f steps/s)%n",
+                          ran, field.getDepth(), field.getWidth(), seconds, ran / seconds);
+        if(saveFile != null) {
+            try {
+                simulator.save(Path.of(saveFile));
+            }
+            catch(IOException e) {
+                System.err.println("Cannot save: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Create a pipeline that records statistics and then shows the
+     * view, each on its own thread.
+     * @param speciesTable The species in the simulation.
+     * @param recorder Where to record statistics, or null.
+     * @param view The view to show, or null.
+     * @return The pipeline.
+     */
+    private static StepPipeline pipeline(SpeciesTable speciesTable, StatsRecorder recorder,
+                                         SimulatorView view)
+    {
+        StepPipeline pipeline = new StepPipeline(speciesTable);
+        if(recorder != null) {
+            int[] counts = new int[speciesTable.size()];
+            pipeline.addStage("stats", snapshot -> {
+                snapshot.getLiveCounts(counts);
+                recorder.record(snapshot.getStep(), counts);
+            });
+        }
+        if(view != null) {
+            pipeline.addStage("view", view::showStatus);
+        }
+        return pipeline;
+    }
+
+    /**
+     * Run a headless simulation kept in an EntityStore and report how
+     * fast it ran.
+     * @param depth Depth of the field.
+     * @param width Width of the field.
+     * @param steps The number of steps to run.
+     * @param seed The seed for the simulation's random decisions.
+     * @param speciesTable The species in the simulation.
+     * @param recorder Where to record statistics, or null.
+     * @param memory Where to keep the store and the grids.
+     */
+    private static void runStore(int depth, int width, int steps, long seed,
+                                 SpeciesTable speciesTable, StatsRecorder recorder,
+                                 StoreMemory memory)
+    {
+        EntitySimulator simulator = new EntitySimulator(depth, width, seed, speciesTable,
+                                                        memory);
+        int[] counts = new int[speciesTable.size()];
+        long start = System.nanoTime();
+        for(int n = 1; n <= steps && simulator.isViable(); n++) {
+            simulator.simulateOneStep();
+            if(recorder != null) {
+                simulator.getStore().countAlive(counts);
+                recorder.record(simulator.getStep(), counts);
+            }
+        }
+        if(recorder != null) {
+            recorder.flush();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if(recorder != null) {
+            recorder.close();
+        }
+        System.out.printf("Ran %d steps on a %d x %d field in %.3f s (%.1f steps/s)%n",
+                          simulator.getStep(), depth, width,
+                          seconds, simulator.getStep() / seconds);
+    }
 
     /**
      * Construct a simulation field with default size.
@@ -49,6 +408,60 @@ public class Simulator
      */
     public Simulator(int depth, int width)
     {
+        this(depth, width, true);
+    }
+    
+    /**
+     * Create a simulation field with the given size, with or without
+     * a graphical view. A headless simulation builds no window and
+     * reports nothing until observers are added.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param showView Whether to display the simulation in a window.
+     */
+    public Simulator(int depth, int width, boolean showView)
+    {
+        this(depth, width, showView, Randomizer.SEED);
+    }
+    
+    /**
+     * Create a simulation field with the given size and random seed.
+     * Simulations with the same size and seed perform exactly the same.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param showView Whether to display the simulation in a window.
+     * @param seed The seed for the simulation's random decisions.
+     */
+    public Simulator(int depth, int width, boolean showView, long seed)
+    {
+        this(depth, width, showView, seed, SpeciesTable.getDefault());
+    }
+
+    /**
+     * Create a simulation field with the given size, random seed and
+     * species.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param showView Whether to display the simulation in a window.
+     * @param seed The seed for the simulation's random decisions.
+     * @param speciesTable The species in the simulation.
+     */
+    public Simulator(int depth, int width, boolean showView, long seed,
+                     SpeciesTable speciesTable)
+    {
+        this(depth, width, showView, seed, speciesTable, true);
+    }
+
+    /**
+     * Create a simulation field, populating it or leaving it empty for
+     * a snapshot to be restored into.
+     */
+    private Simulator(int depth, int width, boolean showView, long seed,
+                      SpeciesTable speciesTable, boolean populate)
+    {
+        this.seed = seed;
+        this.speciesTable = speciesTable;
+        engine = new SequentialStepEngine(seed);
         conditions = new Conditions(); //to intialise it
         
         if(width <= 0 || depth <= 0) {
@@ -58,10 +471,57 @@ public class Simulator
             width = DEFAULT_WIDTH;
         }
         
-        field = new Field(depth, width);
-        view = new SimulatorView(depth, width);
+        field = new Field(depth, width, speciesTable);
+        nextFieldState = new Field(depth, width, speciesTable);
+        if(showView) {
+            scheduler = new TickScheduler(DEFAULT_VIEW_RATE, 0);
+            view = new SimulatorView(depth, width, speciesTable);
+            addObserver(scheduler.throttle(view));
+            addObserver((completed, current) -> reportStats());
+        }
+        else {
+            scheduler = new TickScheduler();
+            view = null;
+        }
+
+        if(populate) {
+            reset();
+        }
+    }
+
+    /**
+     * Create a simulation from a snapshot saved by save(), in exactly
+     * the state it was saved in. It continues as the saved simulation
+     * would have.
+     * @param file The snapshot file.
+     * @param showView Whether to display the simulation in a window.
+     * @param speciesTable The species the snapshot was saved with.
+     * @return The restored simulation.
+     * @throws IOException If the snapshot cannot be read, or was saved
+     *                     with different species.
+     */
+    public static Simulator resume(Path file, boolean showView, SpeciesTable speciesTable)
+        throws IOException
+    {
+        SnapshotFile snapshot = SnapshotFile.open(file, speciesTable);
+        Simulator simulator = new Simulator(snapshot.getDepth(), snapshot.getWidth(), showView,
+                                            snapshot.getSeed(), speciesTable, false);
+        snapshot.restore(simulator.field);
+        simulator.step = snapshot.getStep();
+        simulator.conditions = snapshot.getConditions();
+        simulator.notifyObservers();
+        return simulator;
+    }
 
-        reset();
+    /**
+     * Save the state of the simulation to a snapshot file, replacing
+     * it if it exists. The simulation can be resumed from it later.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path file) throws IOException
+    {
+        SnapshotFile.write(file, seed, step, conditions, field);
     }
     
     /**
@@ -70,51 +530,68 @@ public class Simulator
      */
     public void runLongSimulation()
     {
-        simulate(700);
+        simulate(DEFAULT_STEPS);
     }
     
     /**
-     * Run the simulation for the given number of steps.
-     * Stop before the given number of steps if it ceases to be viable.
+     * Run the simulation for the given number of steps, at the pace set
+     * by its scheduler. Stop before the given number of steps if it
+     * ceases to be viable or the thread is interrupted.
      * @param numSteps The number of steps to run for.
      */
     public void simulate(int numSteps)
     {
-        reportStats();
         for(int n = 1; n <= numSteps && field.isViable(); n++) {
+            scheduler.awaitTick();
+            if(Thread.currentThread().isInterrupted()) {
+                break;
+            }
             simulateOneStep();
-            delay(50);         // adjust this to change execution speed
+        }
+        for(StepObserver observer : observers) {
+            observer.simulationFinished(step, field);
         }
     }
     
     /**
      * Run the simulation from its current state for a single step.
      * Iterate over the whole field updating the state of each whale and salmon.
+     * Each phase of the step is timed by a StepPhaseEvent for the
+     * flight recorder.
      */
     public void simulateOneStep()
     {
+        long start = System.nanoTime();
+        StepPhaseEvent event = StepPhaseEvent.start();
         if(step % 10 == 0){
             conditions.setHighTide(true);
         }else{ conditions.setHighTide(false);}
     
         conditions.advance();   
+        event.finish("conditions", step + 1, field);
        
         
         step++;
-        // Use a separate Field to store the starting state of
-        // the next step.
-        Field nextFieldState = new Field(field.getDepth(), field.getWidth());
-
-        List<Animal> animals = field.getAnimals();
-        for (Animal anAnimal : animals) {
-            anAnimal.act(field, nextFieldState, conditions);
-        }
+        // Use the spare Field to store the starting state of
+        // the next step. The animals only it holds are gone, and are
+        // kept for reuse by this step's births.
+        event = StepPhaseEvent.start();
+        nextFieldState.clear(field);
+        event.finish("clear", step, nextFieldState);
+        event = StepPhaseEvent.start();
+        engine.step(field, nextFieldState, conditions, step);
+        event.finish("act", step, nextFieldState);
         
-        // Replace the old state with the new one.
+        // Replace the old state with the new one, keeping the old
+        // one as the spare for the next step.
+        event = StepPhaseEvent.start();
+        Field previous = field;
         field = nextFieldState;
+        nextFieldState = previous;
+        event.finish("swap", step, field);
+        lastStepTime = System.nanoTime() - start;
 
-        reportStats();
-        view.showStatus(step, field);
+        notifyObservers();
     }
         
     /**
@@ -123,46 +600,124 @@ public class Simulator
     public void reset()
     {
         step = 0;
+        conditions = new Conditions();
         populate();
-        view.showStatus(step, field);
+        notifyObservers();
+    }
+    
+    /**
+     * Register an observer to be told about every step completed
+     * from now on. May be called from any thread, so that, e.g., a
+     * StepSnapshotPublisher can be attached to a running simulation.
+     * @param observer The observer to add.
+     */
+    public void addObserver(StepObserver observer)
+    {
+        observers.add(observer);
     }
     
     /**
-     * Randomly populate the field with whales and salmons.
+     * Stop telling an observer about the simulation's progress.
+     * @param observer The observer to remove.
+     */
+    public void removeObserver(StepObserver observer)
+    {
+        observers.remove(observer);
+    }
+    
+    /**
+     * Choose how the animals are updated each step.
+     * @param engine The step engine to use from the next step on.
+     */
+    public void setStepEngine(StepEngine engine)
+    {
+        this.engine = engine;
+    }
+    
+    /**
+     * Return the scheduler that paces the simulation. It can be used to
+     * change its speed, or to pause, resume and single-step it, while it
+     * runs.
+     * @return The scheduler.
+     */
+    public TickScheduler getScheduler()
+    {
+        return scheduler;
+    }
+    
+    /**
+     * Return the seed of the simulation's random decisions.
+     * @return The seed.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+    
+    /**
+     * Return the current step of the simulation.
+     * @return The number of steps completed since the last reset.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * Return how long the last step took to compute, not counting the
+     * time spent telling the observers about it.
+     * @return The time in nanoseconds.
+     */
+    public long getLastStepTime()
+    {
+        return lastStepTime;
+    }
+
+    /**
+     * Return the species in the simulation.
+     * @return The species table.
+     */
+    public SpeciesTable getSpeciesTable()
+    {
+        return speciesTable;
+    }
+
+    /**
+     * Return the current state of the field.
+     * @return The field.
+     */
+    public Field getField()
+    {
+        return field;
+    }
+
+    /**
+     * Tell every observer about the current state of the field.
+     */
+    private void notifyObservers()
+    {
+        for(StepObserver observer : observers) {
+            StepPhaseEvent event = StepPhaseEvent.start();
+            observer.stepCompleted(step, field);
+            event.finish(observer, step, field);
+        }
+    }
+    
+    /**
+     * Randomly populate the field with animals of each species.
+     * Each cell draws from its own stream, as if at step 0.
      */
     private void populate()
     {
-        Random rand = Randomizer.getRandom();
+        RandomStream rand = new RandomStream(0);
         field.clear();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                if(rand.nextDouble() <= WHALE_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Whale whale = new Whale(true, location);
-                    field.placeAnimal(whale, location);
-                }
-                else if(rand.nextDouble() <= SALMON_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Salmon salmon = new Salmon(true, location);
-                    field.placeAnimal(salmon, location);
-                }
-                else if(rand.nextDouble() <= SHARK_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Shark shark = new Shark(true, location);
-                    field.placeAnimal(shark, location);
-                }
-                else if(rand.nextDouble() <= SARDINE_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Sardine sardine = new Sardine(true, location);
-                    field.placeAnimal(sardine, location);
-                }
-                else if(rand.nextDouble() <= CLOWNFISH_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Clownfish clownfish = new Clownfish(true, location);
-                    field.placeAnimal(clownfish, location);
-                }
-                // else leave the location empty.
+        for(int cell = 0; cell < field.getCellCount(); cell++) {
+            rand.setSeed(Randomizer.seedFor(seed, 0, cell));
+            Species species = speciesTable.chooseForCell(rand);
+            if(species != null) {
+                field.placeAnimal(new Animal(species, true, cell, rand), cell);
             }
+            // else leave the location empty.
         }
     }
 
@@ -174,18 +729,4 @@ public class Simulator
         //System.out.print("Step: " + step + " ");
         field.fieldStats();
     }
-    
-    /**
-     * Pause for a given time.
-     * @param milliseconds The time to pause for, in milliseconds
-     */
-    private void delay(int milliseconds)
-    {
-        try {
-            Thread.sleep(milliseconds);
-        }
-        catch(InterruptedException e) {
-            // ignore
-        }
-    }
 }
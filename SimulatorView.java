@@ -1,51 +1,81 @@
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.*;
-import java.util.LinkedHashMap;
-import java.util.Map;
 
 /**
  * A graphical view of the simulation grid.
  * The view displays a colored rectangle for each location 
  * representing its contents. It uses a default background color.
- * Colors for each type of species can be defined using the
- * setColor method.
+ * Each species is drawn in the colour given in its species table,
+ * which can be changed using the setColor method.
+ * 
+ * The field is drawn as one pixel per cell, written straight into the
+ * pixels of an image, which is then scaled to the size of the window
+ * in a single drawImage call.
+ * 
+ * The simulation thread never touches Swing. It copies each step into a
+ * frame and publishes it in a single latest-frame slot; the event
+ * dispatch thread draws whichever frame is latest when it gets round to
+ * it. When the simulation runs faster than the display, frames that
+ * were never drawn are simply replaced, so drawing never holds up the
+ * simulation. Frames are recycled, so at most three ever exist.
  * 
  * @author David J. Barnes and Michael Kölling
- * @version 7.0
+ * @version 7.1
  */
-public class SimulatorView extends JFrame
+public class SimulatorView extends JFrame implements StepObserver
 {
     // Colors used for empty locations.
     private static final Color EMPTY_COLOR = Color.white;
 
-    // Color used for objects that have no defined color.
-    private static final Color UNKNOWN_COLOR = Color.gray;
-
     private final String STEP_PREFIX = "Step: ";
     private final String POPULATION_PREFIX = "Population: ";
     private final JLabel stepLabel;
     private final JLabel population;
     private final FieldView fieldView;
     
-    // A map for storing colors for participants in the simulation
-    private final Map<Class<?>, Color> colors;
+    // The color of each species as an RGB pixel, indexed by species code.
+    private final int[] colors;
+    // The species shown.
+    private final SpeciesTable speciesTable;
+    // The most recent frame not yet drawn, or null.
+    private final AtomicReference<Frame> latest = new AtomicReference<>();
+    // A drawn frame ready to be reused, or null.
+    private final AtomicReference<Frame> spare = new AtomicReference<>();
+    // Whether the event dispatch thread has been asked to draw.
+    private final AtomicBoolean drawPending = new AtomicBoolean();
     // A statistics object computing and storing simulation information
     private final FieldStats stats;
 
     /**
-     * Create a view of the given width and height.
+     * Create a view of the given width and height, for the default species.
      * @param height The simulation's height.
      * @param width  The simulation's width.
      */
     public SimulatorView(int height, int width)
+    {
+        this(height, width, SpeciesTable.getDefault());
+    }
+
+    /**
+     * Create a view of the given width and height.
+     * @param height The simulation's height.
+     * @param width  The simulation's width.
+     * @param speciesTable The species to be shown.
+     */
+    public SimulatorView(int height, int width, SpeciesTable speciesTable)
     {
         stats = new FieldStats();
-        colors = new LinkedHashMap<>();
-        setColor(Salmon.class, Color.pink);
-        setColor(Whale.class, Color.blue);
-        setColor(Shark.class, Color.cyan);
-        setColor(Sardine.class, Color.gray);
-        setColor(Clownfish.class, Color.orange);
+        this.speciesTable = speciesTable;
+        colors = new int[speciesTable.size()];
+        for(Species species : speciesTable.getAll()) {
+            setColor(species, new Color(species.getColor()));
+        }
 
         setTitle("SeaLife Simulation");
         stepLabel = new JLabel(STEP_PREFIX, JLabel.CENTER);
@@ -64,62 +94,124 @@ public class SimulatorView extends JFrame
     }
     
     /**
-     * Define a color to be used for a given class of animal.
-     * @param animalClass The animal's Class object.
-     * @param color The color to be used for the given class.
+     * Define a color to be used for a given species.
+     * @param species The species.
+     * @param color The color to be used for the species.
+     */
+    public void setColor(Species species, Color color)
+    {
+        colors[species.getCode()] = color.getRGB();
+    }
+
+    /**
+     * Show the current status of the field. The field is copied into a
+     * frame, which is drawn later on the event dispatch thread, so this
+     * may be called from any thread and does not wait for drawing.
+     * @param step Which iteration step it is.
+     * @param field The field whose status is to be displayed.
+     */
+    public void showStatus(int step, Field field)
+    {
+        Frame frame = obtainFrame(field.getCellCount());
+        frame.step = step;
+        // Cells are pixels, in the same row-major order as the field.
+        int[] pixels = frame.pixels;
+        Arrays.fill(pixels, EMPTY_COLOR.getRGB());
+        List<Animal> animals = field.getAnimals();
+        for(int slot = 0; slot < animals.size(); slot++) {
+            pixels[field.getOccupiedCell(slot)] = colors[animals.get(slot).getSpecies().getCode()];
+        }
+        field.getLiveCounts(frame.counts);
+        publish(frame);
+    }
+
+    /**
+     * Show a snapshot of the field. Like showStatus(int, Field) it may
+     * be called from any thread, such as one reading snapshots while
+     * the simulation computes the next step.
+     * @param snapshot The snapshot to be displayed.
      */
-    public void setColor(Class<?> animalClass, Color color)
+    public void showStatus(StepSnapshot snapshot)
     {
-        colors.put(animalClass, color);
+        Frame frame = obtainFrame(snapshot.getCellCount());
+        frame.step = snapshot.getStep();
+        int[] pixels = frame.pixels;
+        Arrays.fill(pixels, EMPTY_COLOR.getRGB());
+        for(int i = 0; i < snapshot.getOccupiedCount(); i++) {
+            pixels[snapshot.getOccupiedCell(i)] = colors[snapshot.getSpeciesCode(i)];
+        }
+        snapshot.getLiveCounts(frame.counts);
+        publish(frame);
     }
 
     /**
-     * @return The color to be used for a given class of animal.
+     * Return a frame to copy a step into: the latest frame if it was
+     * never drawn, as it is about to be replaced anyway, a drawn one,
+     * or a new one.
+     * @param cellCount The number of cells in the field.
+     * @return The frame.
      */
-    private Color getColor(Class<?> animalClass)
+    private Frame obtainFrame(int cellCount)
     {
-        Color col = colors.get(animalClass);
-        if(col == null) {
-            // no color defined for this class
-            return UNKNOWN_COLOR;
+        Frame frame = latest.getAndSet(null);
+        if(frame == null) {
+            frame = spare.getAndSet(null);
         }
-        else {
-            return col;
+        if(frame == null) {
+            frame = new Frame(cellCount, colors.length);
         }
+        return frame;
     }
 
     /**
-     * Show the current status of the field.
+     * Make a frame the latest, and have the event dispatch thread draw
+     * it unless it has already been asked to draw.
+     * @param frame The frame.
+     */
+    private void publish(Frame frame)
+    {
+        latest.set(frame);
+        if(drawPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drawLatest);
+        }
+    }
+
+    /**
+     * Show the field after each step of the simulation.
      * @param step Which iteration step it is.
      * @param field The field whose status is to be displayed.
      */
-    public void showStatus(int step, Field field)
+    public void stepCompleted(int step, Field field)
     {
+        showStatus(step, field);
+    }
+
+    /**
+     * Draw the latest frame. Runs on the event dispatch thread.
+     */
+    private void drawLatest()
+    {
+        drawPending.set(false);
+        Frame frame = latest.getAndSet(null);
+        if(frame == null) {
+            return;
+        }
         if(!isVisible()) {
             setVisible(true);
         }
-            
-        stepLabel.setText(STEP_PREFIX + step);
-        stats.reset();
-        
-        fieldView.preparePaint();
-
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getAnimalAt(new Location(row, col));
-                if(animal != null) {
-                    stats.incrementCount(animal.getClass());
-                    fieldView.drawMark(col, row, getColor(animal.getClass()));
-                }
-                else {
-                    fieldView.drawMark(col, row, EMPTY_COLOR);
-                }
-            }
+        stepLabel.setText(STEP_PREFIX + frame.step);
+        StringBuilder details = new StringBuilder(POPULATION_PREFIX);
+        for(Species species : speciesTable.getAll()) {
+            details.append(species.getDisplayName())
+                   .append(": ")
+                   .append(frame.counts[species.getCode()])
+                   .append(' ');
         }
-        stats.countFinished();
-
-        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(field));
+        population.setText(details.toString().trim());
+        int[] pixels = fieldView.getPixels();
+        System.arraycopy(frame.pixels, 0, pixels, 0, pixels.length);
         fieldView.repaint();
+        spare.set(frame);
     }
 
     /**
@@ -131,6 +223,25 @@ public class SimulatorView extends JFrame
         return stats.isViable(field);
     }
     
+    /**
+     * One step of the simulation, as it will be drawn.
+     */
+    private static class Frame
+    {
+        // The step shown.
+        int step;
+        // The colour of each cell.
+        final int[] pixels;
+        // The number of live animals of each species.
+        final int[] counts;
+
+        Frame(int cellCount, int speciesCount)
+        {
+            pixels = new int[cellCount];
+            counts = new int[speciesCount];
+        }
+    }
+
     /**
      * Provide a graphical view of a rectangular field. This is 
      * a nested class (a class defined inside a class) which
@@ -144,10 +255,10 @@ public class SimulatorView extends JFrame
         private final int GRID_VIEW_SCALING_FACTOR = 6;
 
         private final int gridWidth, gridHeight;
-        private int xScale, yScale;
-        Dimension size;
-        private Graphics g;
-        private Image fieldImage;
+        // The field, one pixel per cell.
+        private final BufferedImage fieldImage;
+        // The pixels of the image, as RGB values in row-major order.
+        private final int[] pixels;
 
         /**
          * Create a new FieldView component.
@@ -156,7 +267,8 @@ public class SimulatorView extends JFrame
         {
             gridHeight = height;
             gridWidth = width;
-            size = new Dimension(0, 0);
+            fieldImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) fieldImage.getRaster().getDataBuffer()).getData();
         }
 
         /**
@@ -169,52 +281,22 @@ public class SimulatorView extends JFrame
         }
 
         /**
-         * Prepare for a new round of painting. Since the component
-         * may be resized, compute the scaling factor again.
-         */
-        public void preparePaint()
-        {
-            if(! size.equals(getSize())) {  // if the size has changed...
-                size = getSize();
-                fieldImage = fieldView.createImage(size.width, size.height);
-                g = fieldImage.getGraphics();
-
-                xScale = size.width / gridWidth;
-                if(xScale < 1) {
-                    xScale = GRID_VIEW_SCALING_FACTOR;
-                }
-                yScale = size.height / gridHeight;
-                if(yScale < 1) {
-                    yScale = GRID_VIEW_SCALING_FACTOR;
-                }
-            }
-        }
-        
-        /**
-         * Paint on grid location on this field in a given color.
+         * Return the pixels of the field image, one per cell, to be
+         * drawn into before the view is repainted.
          */
-        public void drawMark(int x, int y, Color color)
+        public int[] getPixels()
         {
-            g.setColor(color);
-            g.fillRect(x * xScale, y * yScale, xScale-1, yScale-1);
+            return pixels;
         }
 
         /**
-         * The field view component needs to be redisplayed. Copy the
-         * internal image to screen.
+         * The field view component needs to be redisplayed. Scale the
+         * field image to the size of the component.
          */
         public void paintComponent(Graphics g)
         {
-            if(fieldImage != null) {
-                Dimension currentSize = getSize();
-                if(size.equals(currentSize)) {
-                    g.drawImage(fieldImage, 0, 0, null);
-                }
-                else {
-                    // Rescale the previous image.
-                    g.drawImage(fieldImage, 0, 0, currentSize.width, currentSize.height, null);
-                }
-            }
+            Dimension currentSize = getSize();
+            g.drawImage(fieldImage, 0, 0, currentSize.width, currentSize.height, null);
         }
     }
 }
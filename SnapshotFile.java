@@ -0,0 +1,402 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Saves and restores the complete state of a simulation in a compact,
+ * versioned binary file, so a run can be stopped and resumed exactly.
+ *
+ * A snapshot holds the field's dimensions, the seed and step counter,
+ * the time of day and tide, the species the simulation was saved with
+ * and every animal in the field, dead or alive. The random streams
+ * need no state of their own, as every stream is seeded from the seed,
+ * the step and a cell (see Randomizer).
+ *
+ * The layout, big-endian, is:
+ *   int magic, int version, int depth, int width, long seed, int step,
+ *   int time of day, byte high tide,
+ *   int species count, then each species' key (short length, UTF-8),
+ *   int animal count, byte whether the animals act in cell order,
+ *   the grid, then (unless the animals act in cell order) the act order.
+ * The grid is a sequence of runs covering every cell in order: a
+ * varint count of empty cells, a varint count of occupied cells, then
+ * one record per occupied cell (byte species code, byte flags, varint
+ * age, varint food level). The act order gives, for each occupied cell
+ * in cell order, the varint position of its animal in the field's list
+ * of animals, which is the order the animals act in.
+ *
+ * Snapshots are written through a FileChannel and read through a
+ * MappedByteBuffer, so loading does no copying beyond decoding. A
+ * mapping is limited to 2 GB, which is far more than the largest
+ * field an int cell index can address needs.
+ *
+ * @version 7.1
+ */
+public class SnapshotFile
+{
+    // Identifies a snapshot file ("HSNP").
+    public static final int MAGIC = 0x48534E50;
+    // The version of the format written.
+    public static final int VERSION = 1;
+
+    // The size of the buffer snapshots are written through.
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    // The flag set in a record for a live animal.
+    private static final int ALIVE = 1;
+    // The flag set in a record for a male.
+    private static final int MALE = 2;
+
+    // The dimensions of the saved field.
+    private final int depth, width;
+    // The seed of the saved simulation.
+    private final long seed;
+    // The step the simulation was saved at.
+    private final int step;
+    // The time of day and tide when the simulation was saved.
+    private final int timeOfDay;
+    private final boolean highTide;
+    // The species of the saved animals.
+    private final SpeciesTable speciesTable;
+    // The number of animals saved.
+    private final int animalCount;
+    // Whether the animals act in cell order.
+    private final boolean inCellOrder;
+    // The mapped file, positioned at the start of the grid.
+    private final ByteBuffer buffer;
+
+    /**
+     * Write the state of a simulation to a file, replacing it if it exists.
+     * @param file The file to write.
+     * @param seed The seed of the simulation.
+     * @param step The step the simulation has reached.
+     * @param conditions The time of day and tide.
+     * @param field The current state of the field.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Path file, long seed, int step, Conditions conditions, Field field)
+        throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                                   StandardOpenOption.WRITE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer out = new Writer(channel);
+            out.ensure(64);
+            ByteBuffer bytes = out.buffer;
+            bytes.putInt(MAGIC).putInt(VERSION)
+                 .putInt(field.getDepth()).putInt(field.getWidth())
+                 .putLong(seed).putInt(step)
+                 .putInt(conditions.getCurrentStep())
+                 .put((byte) (conditions.isHighTide() ? 1 : 0));
+
+            List<Species> species = field.getSpeciesTable().getAll();
+            out.ensure(4);
+            bytes.putInt(species.size());
+            for(Species each : species) {
+                byte[] key = each.getKey().getBytes(StandardCharsets.UTF_8);
+                out.ensure(2 + key.length);
+                bytes.putShort((short) key.length).put(key);
+            }
+
+            List<Animal> animals = field.getAnimals();
+            boolean inCellOrder = true;
+            for(int slot = 1; slot < animals.size() && inCellOrder; slot++) {
+                inCellOrder = field.getOccupiedCell(slot - 1) < field.getOccupiedCell(slot);
+            }
+            out.ensure(5);
+            bytes.putInt(animals.size()).put((byte) (inCellOrder ? 1 : 0));
+
+            int cellCount = field.getCellCount();
+            int cell = 0;
+            while(cell < cellCount) {
+                // Empty chunks of the field are skipped whole.
+                int empty = field.nextOccupiedCell(cell, cellCount) - cell;
+                cell += empty;
+                int occupied = 0;
+                while(cell + occupied < cellCount && field.getAnimalAt(cell + occupied) != null) {
+                    occupied++;
+                }
+                out.writeVarint(empty);
+                out.writeVarint(occupied);
+                for(int end = cell + occupied; cell < end; cell++) {
+                    Animal animal = field.getAnimalAt(cell);
+                    out.ensure(12);
+                    bytes.put((byte) animal.getSpecies().getCode())
+                         .put((byte) ((animal.isAlive() ? ALIVE : 0)
+                                      | (animal.isMale() ? MALE : 0)));
+                    out.writeVarint(animal.getAge());
+                    out.writeVarint(animal.getFoodLevel());
+                }
+            }
+
+            if(!inCellOrder) {
+                cell = field.nextOccupiedCell(0, cellCount);
+                while(cell < cellCount) {
+                    out.writeVarint(field.getSlot(cell));
+                    cell = field.nextOccupiedCell(cell + 1, cellCount);
+                }
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Open a snapshot and read its header. The animals are decoded
+     * when the snapshot is restored into a field.
+     * @param file The snapshot file.
+     * @param speciesTable The species of the simulation to restore. They
+     *                     must be the species the snapshot was saved with.
+     * @return The snapshot.
+     * @throws IOException If the file cannot be read, is not a snapshot
+     *                     of a supported version, or was saved with
+     *                     different species.
+     */
+    public static SnapshotFile open(Path file, SpeciesTable speciesTable) throws IOException
+    {
+        MappedByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be a snapshot");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            return new SnapshotFile(file, buffer, speciesTable);
+        }
+        catch(BufferUnderflowException e) {
+            throw new IOException(file + " is truncated");
+        }
+    }
+
+    /**
+     * Read the header of a mapped snapshot.
+     */
+    private SnapshotFile(Path file, ByteBuffer buffer, SpeciesTable speciesTable)
+        throws IOException
+    {
+        if(buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not a snapshot");
+        }
+        int version = buffer.getInt();
+        if(version != VERSION) {
+            throw new IOException(file + " has unsupported version " + version);
+        }
+        depth = buffer.getInt();
+        width = buffer.getInt();
+        if(depth <= 0 || width <= 0 || (long) depth * width > Integer.MAX_VALUE) {
+            throw new IOException(file + " has invalid dimensions " + depth + " x " + width);
+        }
+        seed = buffer.getLong();
+        step = buffer.getInt();
+        timeOfDay = buffer.getInt();
+        highTide = buffer.get() != 0;
+
+        int speciesCount = buffer.getInt();
+        boolean sameSpecies = speciesCount == speciesTable.size();
+        for(int code = 0; code < speciesCount; code++) {
+            byte[] key = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(key);
+            sameSpecies = sameSpecies && speciesTable.get(code).getKey()
+                .equals(new String(key, StandardCharsets.UTF_8));
+        }
+        if(!sameSpecies) {
+            throw new IOException(file + " was saved with different species");
+        }
+        this.speciesTable = speciesTable;
+        animalCount = buffer.getInt();
+        inCellOrder = buffer.get() != 0;
+        this.buffer = buffer.slice();
+    }
+
+    /**
+     * Place the saved animals into an empty field of the saved size, in
+     * the order they were saved in.
+     * @param field The field to fill.
+     * @throws IOException If the snapshot is corrupt.
+     */
+    public void restore(Field field) throws IOException
+    {
+        if(field.getDepth() != depth || field.getWidth() != width) {
+            throw new IllegalArgumentException("The field is not " + depth + " x " + width);
+        }
+        ByteBuffer in = buffer.duplicate();
+        try {
+            int cellCount = depth * width;
+            // Until the act order is read, animals are kept in cell order.
+            Animal[] animals = inCellOrder ? null : new Animal[animalCount];
+            int[] cells = inCellOrder ? null : new int[animalCount];
+            int count = 0;
+            int cell = 0;
+            while(cell < cellCount) {
+                cell += readVarint(in);
+                int occupied = readVarint(in);
+                if(cell < 0 || cell + occupied > cellCount || count + occupied > animalCount) {
+                    throw new IOException("Corrupt snapshot grid");
+                }
+                for(int end = cell + occupied; cell < end; cell++) {
+                    Animal animal = readAnimal(in, cell);
+                    if(inCellOrder) {
+                        field.placeAnimal(animal, cell);
+                    }
+                    else {
+                        animals[count] = animal;
+                        cells[count] = cell;
+                    }
+                    count++;
+                }
+            }
+            if(count != animalCount) {
+                throw new IOException("Corrupt snapshot grid");
+            }
+
+            if(!inCellOrder) {
+                Animal[] bySlot = new Animal[animalCount];
+                int[] cellBySlot = new int[animalCount];
+                for(int i = 0; i < animalCount; i++) {
+                    int slot = readVarint(in);
+                    if(slot < 0 || slot >= animalCount || bySlot[slot] != null) {
+                        throw new IOException("Corrupt snapshot act order");
+                    }
+                    bySlot[slot] = animals[i];
+                    cellBySlot[slot] = cells[i];
+                }
+                for(int slot = 0; slot < animalCount; slot++) {
+                    field.placeAnimal(bySlot[slot], cellBySlot[slot]);
+                }
+            }
+        }
+        catch(BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot");
+        }
+    }
+
+    /**
+     * @return The depth of the saved field.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the saved field.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return The seed of the saved simulation.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * @return The step the simulation was saved at.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The time of day and tide when the simulation was saved.
+     */
+    public Conditions getConditions()
+    {
+        return new Conditions(timeOfDay, highTide);
+    }
+
+    /**
+     * Decode one animal record.
+     */
+    private Animal readAnimal(ByteBuffer in, int cell) throws IOException
+    {
+        int code = in.get();
+        int flags = in.get();
+        if(code < 0 || code >= speciesTable.size()) {
+            throw new IOException("Corrupt snapshot species " + code);
+        }
+        Animal animal = new Animal(speciesTable.get(code), cell, (flags & MALE) != 0,
+                                   readVarint(in), readVarint(in));
+        if((flags & ALIVE) == 0) {
+            animal.setDead();
+        }
+        return animal;
+    }
+
+    /**
+     * Read an unsigned LEB128 varint.
+     */
+    private static int readVarint(ByteBuffer in) throws IOException
+    {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt snapshot varint");
+    }
+
+    /**
+     * Writes through a direct buffer to a channel.
+     */
+    private static class Writer
+    {
+        // The buffer being filled.
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        // The channel written to.
+        private final FileChannel channel;
+
+        Writer(FileChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        /**
+         * Make room for the given number of bytes in the buffer.
+         */
+        void ensure(int bytes) throws IOException
+        {
+            if(buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        /**
+         * Write an int as an unsigned LEB128 varint.
+         */
+        void writeVarint(int value) throws IOException
+        {
+            ensure(5);
+            while((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        /**
+         * Write out everything in the buffer.
+         */
+        void flush() throws IOException
+        {
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
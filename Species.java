@@ -0,0 +1,216 @@
+/**
+ * The life-history parameters of one species: how it is created,
+ * breeds, ages, eats and competes. Species are data rather than
+ * classes: they are loaded into a SpeciesTable from configuration, and
+ * every animal runs the same code, looking its parameters up here.
+ *
+ * A species' code is its position in its table, and is used wherever
+ * animals are stored or counted as numbers rather than objects.
+ *
+ * @version 7.1
+ */
+public class Species
+{
+    // The code used for "no species".
+    public static final int NONE = -1;
+
+    // The species' position in its table.
+    private final int code;
+    // The name of the species in configuration.
+    private final String key;
+    // The name of the species for display.
+    private final String displayName;
+    // The species' colour in the view, as 0xRRGGBB.
+    private final int color;
+    // The probability that a species member will be created in any given cell.
+    private final double creationProbability;
+    // The age at which a species member can start to breed.
+    private final int breedingAge;
+    // The age to which a species member can live.
+    private final int maxAge;
+    // The likelihood of a species member breeding.
+    private final double breedingProbability;
+    // The maximum number of births.
+    private final int maxLitterSize;
+    // Whether species members stay still at night.
+    private final boolean sleepsAtNight;
+    // The food level of a newborn; zero for species that do not eat.
+    private final int initialFoodLevel;
+    // The food value of each species as prey, indexed by code; zero for
+    // species that are not eaten.
+    private final int[] foodValues;
+    // For each prey, whether the rival eats it too.
+    private final boolean[] contested;
+    // The code of the predator competing for prey, or NONE.
+    private final int rival;
+    // The chance of winning a contested prey, at high tide and otherwise.
+    private final double highTideWinProbability, winProbability;
+
+    /**
+     * Create a species. Species are created by SpeciesTable.
+     */
+    Species(int code, String key, String displayName, int color,
+            double creationProbability, int breedingAge, int maxAge,
+            double breedingProbability, int maxLitterSize, boolean sleepsAtNight,
+            int initialFoodLevel, int[] foodValues, boolean[] contested, int rival,
+            double highTideWinProbability, double winProbability)
+    {
+        this.code = code;
+        this.key = key;
+        this.displayName = displayName;
+        this.color = color;
+        this.creationProbability = creationProbability;
+        this.breedingAge = breedingAge;
+        this.maxAge = maxAge;
+        this.breedingProbability = breedingProbability;
+        this.maxLitterSize = maxLitterSize;
+        this.sleepsAtNight = sleepsAtNight;
+        this.initialFoodLevel = initialFoodLevel;
+        this.foodValues = foodValues.clone();
+        this.contested = contested.clone();
+        this.rival = rival;
+        this.highTideWinProbability = highTideWinProbability;
+        this.winProbability = winProbability;
+    }
+
+    /**
+     * @return The species' position in its table.
+     */
+    public int getCode()
+    {
+        return code;
+    }
+
+    /**
+     * @return The name of the species in configuration.
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * @return The name of the species for display.
+     */
+    public String getDisplayName()
+    {
+        return displayName;
+    }
+
+    /**
+     * @return The species' colour in the view, as 0xRRGGBB.
+     */
+    public int getColor()
+    {
+        return color;
+    }
+
+    /**
+     * @return The probability that a species member will be created in a cell.
+     */
+    public double getCreationProbability()
+    {
+        return creationProbability;
+    }
+
+    /**
+     * @return The age at which a species member can start to breed.
+     */
+    public int getBreedingAge()
+    {
+        return breedingAge;
+    }
+
+    /**
+     * @return The age to which a species member can live.
+     */
+    public int getMaxAge()
+    {
+        return maxAge;
+    }
+
+    /**
+     * @return The likelihood of a species member breeding.
+     */
+    public double getBreedingProbability()
+    {
+        return breedingProbability;
+    }
+
+    /**
+     * @return The maximum number of births.
+     */
+    public int getMaxLitterSize()
+    {
+        return maxLitterSize;
+    }
+
+    /**
+     * @return Whether species members stay still at night.
+     */
+    public boolean sleepsAtNight()
+    {
+        return sleepsAtNight;
+    }
+
+    /**
+     * @return Whether species members eat, and so can starve.
+     */
+    public boolean isPredator()
+    {
+        return initialFoodLevel > 0;
+    }
+
+    /**
+     * @return The food level of a newborn; zero for species that do not eat.
+     */
+    public int getInitialFoodLevel()
+    {
+        return initialFoodLevel;
+    }
+
+    /**
+     * Return the food value of a prey species.
+     * @param preyCode The code of the prey species.
+     * @return The number of steps a species member can go after eating
+     *         one, or zero if it does not eat that species.
+     */
+    public int getFoodValue(int preyCode)
+    {
+        return foodValues[preyCode];
+    }
+
+    /**
+     * Return whether the rival competes for a prey species.
+     * @param preyCode The code of the prey species.
+     * @return true if the rival eats that species too.
+     */
+    public boolean isContested(int preyCode)
+    {
+        return contested[preyCode];
+    }
+
+    /**
+     * @return The code of the predator competing for prey, or NONE.
+     */
+    public int getRival()
+    {
+        return rival;
+    }
+
+    /**
+     * Return the chance of winning a prey the rival competes for.
+     * @param highTide Whether the tide is high.
+     * @return The chance of winning.
+     */
+    public double getWinProbability(boolean highTide)
+    {
+        return highTide ? highTideWinProbability : winProbability;
+    }
+
+    @Override
+    public String toString()
+    {
+        return displayName;
+    }
+}
@@ -0,0 +1,330 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The species in a simulation, loaded from a properties file (see
+ * species.properties for the format). Adding a species, or changing how
+ * one behaves, is a change to the file rather than to the code.
+ *
+ * Tables are immutable, so one table can be shared by any number of
+ * simulations running at once.
+ *
+ * @version 7.1
+ */
+public class SpeciesTable
+{
+    // The resource holding the default species.
+    public static final String DEFAULT_RESOURCE = "species.properties";
+    // The most species a table can hold, as codes are stored in bytes.
+    public static final int MAX_SPECIES = Byte.MAX_VALUE;
+
+    // The species, by code.
+    private final Species[] species;
+
+    /**
+     * Holds the default table, loaded the first time it is needed.
+     */
+    private static class DefaultTable
+    {
+        static final SpeciesTable INSTANCE = loadDefault();
+    }
+
+    /**
+     * Create a table of the given species.
+     */
+    private SpeciesTable(Species[] species)
+    {
+        this.species = species;
+    }
+
+    /**
+     * Return the table loaded from the species.properties resource
+     * next to this class.
+     * @return The default species.
+     * @throws IllegalStateException If the resource is missing or invalid.
+     */
+    public static SpeciesTable getDefault()
+    {
+        return DefaultTable.INSTANCE;
+    }
+
+    /**
+     * Load a table from a properties file.
+     * @param file The file to load.
+     * @return The species it defines.
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If the file is not a valid table.
+     */
+    public static SpeciesTable load(Path file) throws IOException
+    {
+        try(Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Properties properties = new Properties();
+            properties.load(in);
+            return load(properties);
+        }
+    }
+
+    /**
+     * Build a table from properties.
+     * @param properties The species configuration.
+     * @return The species it defines.
+     * @throws IllegalArgumentException If the properties are not a valid table.
+     */
+    public static SpeciesTable load(Properties properties)
+    {
+        List<String> keys = parseList(required(properties, "species"));
+        if(keys.isEmpty() || keys.size() > MAX_SPECIES) {
+            throw new IllegalArgumentException(
+                "Between 1 and " + MAX_SPECIES + " species must be listed");
+        }
+        int count = keys.size();
+        Species[] species = new Species[count];
+        for(int code = 0; code < count; code++) {
+            String key = keys.get(code);
+            if(keys.indexOf(key) != code) {
+                throw new IllegalArgumentException("Species " + key + " is listed twice");
+            }
+
+            int[] foodValues = new int[count];
+            for(String entry : parseList(properties.getProperty(key + ".diet", ""))) {
+                String[] parts = entry.split(":");
+                if(parts.length != 2) {
+                    throw new IllegalArgumentException(
+                        "Invalid diet entry for " + key + ": " + entry);
+                }
+                int prey = codeOf(keys, parts[0].trim(), key + ".diet");
+                foodValues[prey] = parsePositive(key + ".diet", parts[1].trim());
+            }
+
+            int rival = Species.NONE;
+            boolean[] contested = new boolean[count];
+            String rivalKey = properties.getProperty(key + ".rival");
+            if(rivalKey != null) {
+                rival = codeOf(keys, rivalKey.trim(), key + ".rival");
+                String rivalDiet = properties.getProperty(rivalKey.trim() + ".diet", "");
+                for(String entry : parseList(rivalDiet)) {
+                    contested[codeOf(keys, entry.split(":")[0].trim(), rivalKey + ".diet")] = true;
+                }
+            }
+
+            int initialFoodLevel = parseInt(properties, key + ".initialFoodLevel", "0");
+            boolean eats = Arrays.stream(foodValues).anyMatch(value -> value > 0);
+            if(eats && initialFoodLevel <= 0) {
+                throw new IllegalArgumentException(
+                    key + ".initialFoodLevel must be positive for a species that eats");
+            }
+            species[code] = new Species(
+                code, key,
+                properties.getProperty(key + ".name", key).trim(),
+                parseColor(properties, key + ".color"),
+                parseProbability(properties, key + ".creationProbability", null),
+                parseInt(properties, key + ".breedingAge", null),
+                parsePositive(key + ".maxAge", required(properties, key + ".maxAge")),
+                parseProbability(properties, key + ".breedingProbability", null),
+                parsePositive(key + ".maxLitterSize", required(properties, key + ".maxLitterSize")),
+                Boolean.parseBoolean(properties.getProperty(key + ".sleepsAtNight", "false").trim()),
+                initialFoodLevel, foodValues, contested, rival,
+                parseProbability(properties, key + ".highTideWinProbability", "0"),
+                parseProbability(properties, key + ".winProbability", "0"));
+        }
+        return new SpeciesTable(species);
+    }
+
+    /**
+     * @return The number of species.
+     */
+    public int size()
+    {
+        return species.length;
+    }
+
+    /**
+     * Return the species with the given code.
+     * @param code The species' code.
+     * @return The species.
+     */
+    public Species get(int code)
+    {
+        return species[code];
+    }
+
+    /**
+     * Find a species by its configuration key or display name.
+     * @param name The key or name, in any case.
+     * @return The species, or null if there is none by that name.
+     */
+    public Species find(String name)
+    {
+        for(Species candidate : species) {
+            if(candidate.getKey().equalsIgnoreCase(name)
+               || candidate.getDisplayName().equalsIgnoreCase(name)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Choose the species of the animal a new cell starts with: each
+     * species in turn is given the chance to create one, with its
+     * creation probability.
+     * @param rand The random stream for the cell.
+     * @return The species, or null if the cell starts empty.
+     */
+    public Species chooseForCell(RandomStream rand)
+    {
+        for(Species candidate : species) {
+            if(rand.nextDouble() <= candidate.getCreationProbability()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Every species, in code order.
+     */
+    public List<Species> getAll()
+    {
+        return Collections.unmodifiableList(Arrays.asList(species));
+    }
+
+    /**
+     * Load the default table from its resource.
+     */
+    private static SpeciesTable loadDefault()
+    {
+        try(InputStream in = SpeciesTable.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if(in == null) {
+                throw new IllegalStateException("Missing resource " + DEFAULT_RESOURCE);
+            }
+            Properties properties = new Properties();
+            properties.load(in);
+            return load(properties);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Cannot read " + DEFAULT_RESOURCE, e);
+        }
+        catch(IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid " + DEFAULT_RESOURCE + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Split a comma-separated list, ignoring blank entries.
+     */
+    private static List<String> parseList(String value)
+    {
+        List<String> entries = new ArrayList<>();
+        for(String entry : value.split(",")) {
+            if(!entry.isBlank()) {
+                entries.add(entry.trim());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Return the code of a listed species.
+     */
+    private static int codeOf(List<String> keys, String key, String property)
+    {
+        int code = keys.indexOf(key);
+        if(code < 0) {
+            throw new IllegalArgumentException("Unknown species in " + property + ": " + key);
+        }
+        return code;
+    }
+
+    /**
+     * Return a property that must be present.
+     */
+    private static String required(Properties properties, String property)
+    {
+        String value = properties.getProperty(property);
+        if(value == null) {
+            throw new IllegalArgumentException("Missing " + property);
+        }
+        return value.trim();
+    }
+
+    /**
+     * Parse a non-negative int property, using the default if it is absent
+     * and the default is not null.
+     */
+    private static int parseInt(Properties properties, String property, String defaultValue)
+    {
+        String value = defaultValue == null ? required(properties, property)
+                                            : properties.getProperty(property, defaultValue).trim();
+        try {
+            int number = Integer.parseInt(value);
+            if(number < 0) {
+                throw new IllegalArgumentException(property + " must not be negative");
+            }
+            return number;
+        }
+        catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + property + ": " + value);
+        }
+    }
+
+    /**
+     * Parse a value that must be a positive int.
+     */
+    private static int parsePositive(String property, String value)
+    {
+        try {
+            int number = Integer.parseInt(value);
+            if(number <= 0) {
+                throw new IllegalArgumentException(property + " must be positive");
+            }
+            return number;
+        }
+        catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + property + ": " + value);
+        }
+    }
+
+    /**
+     * Parse a probability property, using the default if it is absent
+     * and the default is not null.
+     */
+    private static double parseProbability(Properties properties, String property,
+                                           String defaultValue)
+    {
+        String value = defaultValue == null ? required(properties, property)
+                                            : properties.getProperty(property, defaultValue).trim();
+        try {
+            double probability = Double.parseDouble(value);
+            if(!(probability >= 0 && probability <= 1)) {
+                throw new IllegalArgumentException(property + " must be between 0 and 1");
+            }
+            return probability;
+        }
+        catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + property + ": " + value);
+        }
+    }
+
+    /**
+     * Parse an optional #RRGGBB colour property, defaulting to grey.
+     */
+    private static int parseColor(Properties properties, String property)
+    {
+        String value = properties.getProperty(property, "#808080").trim();
+        if(!value.matches("#[0-9A-Fa-f]{6}")) {
+            throw new IllegalArgumentException("Invalid value for " + property + ": " + value);
+        }
+        return Integer.parseInt(value.substring(1), 16);
+    }
+}
@@ -0,0 +1,299 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A step observer that hands population counts to statistics sinks on a
+ * background thread. The step loop only copies a small primitive record
+ * (the step and one count per species) into a preallocated ring buffer;
+ * a writer thread drains the ring in batches, passes each record to
+ * every sink and flushes them after each batch. Nothing is allocated
+ * and no I/O is done on the simulation thread.
+ *
+ * Only every sampleInterval-th step is recorded. Should the writer fall
+ * a whole ring behind, the step loop waits for it rather than losing
+ * records. Once a sink has failed, though, records are discarded rather
+ * than waited for, and the failure is reported by flush and close.
+ *
+ * @version 7.1
+ */
+public class StatsRecorder implements StepObserver
+{
+    // The number of records the ring holds by default.
+    public static final int DEFAULT_CAPACITY = 4096;
+    // How long the writer sleeps when the ring is empty.
+    private static final long DRAIN_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+    // How long the step loop sleeps while the ring is full.
+    private static final long FULL_WAIT = TimeUnit.MICROSECONDS.toNanos(100);
+
+    // Where the records go.
+    private final List<StatsSink> sinks;
+    // The number of species counted.
+    private final int speciesCount;
+    // The ints in each record: the step, then one count per species.
+    private final int recordSize;
+    // Record every this many steps.
+    private final int sampleInterval;
+    // The number of records the ring holds.
+    private final int capacity;
+    // The records, recordSize ints each.
+    private final int[] ring;
+    // The counts of the step being recorded, filled on the step thread.
+    private final int[] counts;
+    // The counts of the record being written, filled on the writer thread.
+    private final int[] writerCounts;
+    // The number of records ever added to the ring.
+    private volatile long published;
+    // The number of records ever written to the sinks and flushed.
+    private volatile long consumed;
+    // Whether no more records will be added.
+    private volatile boolean closed;
+    // The first failure of a sink or the writer, reported by flush and close.
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    // Drains the ring into the sinks.
+    private final Thread writer;
+
+    /**
+     * Create a recorder writing every step to the given sinks.
+     * @param speciesTable The species counted.
+     * @param sinks The destinations for the statistics.
+     */
+    public StatsRecorder(SpeciesTable speciesTable, List<StatsSink> sinks)
+    {
+        this(speciesTable, sinks, 1, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a recorder writing every sampleInterval-th step to the
+     * given sinks.
+     * @param speciesTable The species counted.
+     * @param sinks The destinations for the statistics.
+     * @param sampleInterval Record steps that are a multiple of this.
+     * @param capacity The number of records the ring holds.
+     */
+    public StatsRecorder(SpeciesTable speciesTable, List<StatsSink> sinks,
+                         int sampleInterval, int capacity)
+    {
+        if(sampleInterval < 1 || capacity < 1) {
+            throw new IllegalArgumentException(
+                "The sample interval and capacity must be at least 1");
+        }
+        this.sinks = List.copyOf(sinks);
+        this.sampleInterval = sampleInterval;
+        this.capacity = capacity;
+        speciesCount = speciesTable.size();
+        recordSize = 1 + speciesCount;
+        counts = new int[speciesCount];
+        writerCounts = new int[speciesCount];
+        ring = new int[capacity * recordSize];
+        writer = new Thread(this::drain, "stats-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Record the field's population counts, if the step is sampled.
+     * @param step The step that has just completed.
+     * @param field The state of the field after the step.
+     */
+    public void stepCompleted(int step, Field field)
+    {
+        if(step % sampleInterval == 0) {
+            field.getLiveCounts(counts);
+            record(step, counts);
+        }
+    }
+
+    /**
+     * Make sure everything recorded so far has reached the sinks.
+     * @param step The last step completed.
+     * @param field The final state of the field.
+     */
+    public void simulationFinished(int step, Field field)
+    {
+        flush();
+    }
+
+    /**
+     * Record population counts, if the step is sampled. This is for
+     * simulations that do not use a Field. The counts are discarded if
+     * a sink has failed.
+     * @param step The step the counts were taken after.
+     * @param counts The number of live animals of each species, indexed
+     *               by species code.
+     */
+    public void record(int step, int[] counts)
+    {
+        if(closed) {
+            throw new IllegalStateException("The recorder is closed");
+        }
+        if(step % sampleInterval != 0) {
+            return;
+        }
+        long next = published;
+        while(next - consumed >= capacity) {
+            if(failure.get() != null || !writer.isAlive()) {
+                return;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FULL_WAIT);
+        }
+        int offset = (int) (next % capacity) * recordSize;
+        ring[offset] = step;
+        System.arraycopy(counts, 0, ring, offset + 1, speciesCount);
+        // Publishing the record makes it visible to the writer.
+        published = next + 1;
+    }
+
+    /**
+     * Wait until every record so far has been written to the sinks and
+     * flushed.
+     * @throws UncheckedIOException If a sink has failed to write.
+     * @throws IllegalStateException If a sink or the writer has failed
+     *                               in any other way.
+     */
+    public void flush()
+    {
+        long target = published;
+        while(consumed < target && writer.isAlive() && failure.get() == null) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FULL_WAIT);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Write the remaining records, close the sinks and stop the writer.
+     * @throws UncheckedIOException If a sink has failed to write.
+     * @throws IllegalStateException If a sink or the writer has failed
+     *                               in any other way.
+     */
+    public void close()
+    {
+        if(!closed) {
+            closed = true;
+            LockSupport.unpark(writer);
+            boolean interrupted = false;
+            while(writer.isAlive()) {
+                try {
+                    writer.join();
+                }
+                catch(InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        checkFailure();
+    }
+
+    /**
+     * The writer thread: write records in batches until closed.
+     */
+    private void drain()
+    {
+        try {
+            drainRing();
+        }
+        catch(Throwable e) {
+            fail(e);
+        }
+        for(StatsSink sink : sinks) {
+            try {
+                sink.close();
+            }
+            catch(Throwable e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Write records in batches until closed.
+     */
+    private void drainRing()
+    {
+        while(true) {
+            // Read closed first: once it is seen, every record is published.
+            boolean done = closed;
+            long available = published;
+            long next = consumed;
+            if(next < available) {
+                for(; next < available; next++) {
+                    int offset = (int) (next % capacity) * recordSize;
+                    System.arraycopy(ring, offset + 1, writerCounts, 0, speciesCount);
+                    writeToSinks(ring[offset]);
+                }
+                flushSinks();
+                consumed = available;
+            }
+            else if(done) {
+                break;
+            }
+            else {
+                LockSupport.parkNanos(DRAIN_INTERVAL);
+            }
+        }
+    }
+
+    /**
+     * Write the writer's current record to every sink.
+     */
+    private void writeToSinks(int step)
+    {
+        if(failure.get() == null) {
+            try {
+                for(StatsSink sink : sinks) {
+                    sink.write(step, writerCounts);
+                }
+            }
+            catch(Throwable e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Flush every sink.
+     */
+    private void flushSinks()
+    {
+        if(failure.get() == null) {
+            try {
+                for(StatsSink sink : sinks) {
+                    sink.flush();
+                }
+            }
+            catch(Throwable e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Remember the first failure. Later records are discarded.
+     */
+    private void fail(Throwable e)
+    {
+        failure.compareAndSet(null, e);
+    }
+
+    /**
+     * Report a failure of a sink.
+     */
+    private void checkFailure()
+    {
+        Throwable e = failure.get();
+        if(e instanceof IOException io) {
+            throw new UncheckedIOException("Statistics could not be written", io);
+        }
+        if(e != null) {
+            throw new IllegalStateException("Statistics could not be written: " + e, e);
+        }
+    }
+}
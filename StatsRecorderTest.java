@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that a StatsRecorder whose sink fails keeps accepting records
+ * instead of blocking the simulation, and reports the failure on flush.
+ *
+ * Run with: java StatsRecorderTest
+ * It prints each check passed, and exits with an error at the first
+ * check failed.
+ *
+ * @version 7.1
+ */
+public class StatsRecorderTest
+{
+    // The most records the recorder under test holds, so it fills quickly.
+    private static final int CAPACITY = 4;
+    // The steps recorded, many times the capacity.
+    private static final int STEPS = 1000;
+    // How long recording may take before it is taken to have hung.
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+    // The species counted.
+    private static final SpeciesTable SPECIES = SpeciesTable.getDefault();
+
+    /**
+     * Run every check.
+     * @param args Not used.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        checkFailure("a sink throwing a RuntimeException",
+                     new IllegalArgumentException("sink failed"),
+                     IllegalStateException.class);
+        checkFailure("a sink throwing an Error",
+                     new OutOfMemoryError("sink failed"),
+                     IllegalStateException.class);
+        checkFailure("a sink throwing an IOException",
+                     new IOException("sink failed"),
+                     UncheckedIOException.class);
+    }
+
+    /**
+     * Record many more steps than the ring holds to a sink that fails
+     * on its first write, and check that recording returns and that
+     * flush and close report the failure.
+     * @param description What is checked, for the report.
+     * @param cause What the sink throws.
+     * @param reported The exception flush and close should throw.
+     */
+    private static void checkFailure(String description, Throwable cause,
+                                     Class<? extends RuntimeException> reported)
+        throws InterruptedException
+    {
+        StatsRecorder recorder = new StatsRecorder(SPECIES, List.of(new FailingSink(cause)),
+                                                   1, CAPACITY);
+        int[] counts = new int[SPECIES.size()];
+        Thread steps = new Thread(() -> {
+            for(int step = 1; step <= STEPS; step++) {
+                recorder.record(step, counts);
+            }
+        }, "steps");
+        steps.setDaemon(true);
+        steps.start();
+        steps.join(TIMEOUT);
+        check(!steps.isAlive(), description + ": record() did not return");
+
+        check(throwsReported(recorder::flush, cause, reported),
+              description + ": flush() did not report the failure");
+        check(throwsReported(recorder::close, cause, reported),
+              description + ": close() did not report the failure");
+        System.out.println("ok: " + description);
+    }
+
+    /**
+     * Return whether an action throws the expected exception, caused
+     * by the sink's failure.
+     */
+    private static boolean throwsReported(Runnable action, Throwable cause,
+                                          Class<? extends RuntimeException> reported)
+    {
+        try {
+            action.run();
+            return false;
+        }
+        catch(RuntimeException e) {
+            return reported.isInstance(e) && e.getCause() == cause;
+        }
+    }
+
+    /**
+     * Fail a check.
+     */
+    private static void check(boolean passed, String message)
+    {
+        if(!passed) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * A sink whose every write fails.
+     */
+    private static class FailingSink implements StatsSink
+    {
+        // What each write throws.
+        private final Throwable cause;
+
+        FailingSink(Throwable cause)
+        {
+            this.cause = cause;
+        }
+
+        public void write(int step, int[] counts) throws IOException
+        {
+            if(cause instanceof IOException io) {
+                throw io;
+            }
+            if(cause instanceof Error error) {
+                throw error;
+            }
+            throw (RuntimeException) cause;
+        }
+
+        public void flush()
+        {
+        }
+
+        public void close()
+        {
+        }
+    }
+}
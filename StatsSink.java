@@ -0,0 +1,34 @@
+import java.io.IOException;
+
+/**
+ * A destination for population statistics, such as a file or the
+ * console. Sinks are written by a StatsRecorder's writer thread in
+ * batches, so they may buffer freely and need not be thread safe.
+ *
+ * @version 7.1
+ */
+public interface StatsSink
+{
+    /**
+     * Write the population counts for one step.
+     * @param step The step the counts were taken after.
+     * @param counts The number of live animals of each species,
+     *               indexed by species code. Only valid during
+     *               the call.
+     * @throws IOException If the counts cannot be written.
+     */
+    void write(int step, int[] counts) throws IOException;
+
+    /**
+     * Push any buffered records to their destination. Called after
+     * each batch of records.
+     * @throws IOException If the records cannot be written.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Flush and release the destination.
+     * @throws IOException If the records cannot be written.
+     */
+    void close() throws IOException;
+}
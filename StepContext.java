@@ -0,0 +1,104 @@
+/**
+ * Working state used by animals while they act: scratch buffers for
+ * neighbourhood queries and the random stream that drives their
+ * decisions. Each thread that updates animals has its own context, so
+ * acting allocates nothing and no state is shared between threads.
+ * 
+ * Before an animal acts, the stream is reseeded from the simulation
+ * seed, the step and the animal's cell, so every animal's decisions
+ * are reproducible whatever order the animals act in.
+ *
+ * @version 7.1
+ */
+public class StepContext
+{
+    // Free cells around the acting animal in the next field state.
+    private final int[] freeCells = new int[Field.MAX_NEIGHBOURS];
+    // Cells around the acting animal in the current field.
+    private final int[] adjacentCells = new int[Field.MAX_NEIGHBOURS];
+    // Cells around some other cell, e.g. a mate or a prey animal.
+    private final int[] nearbyCells = new int[Field.MAX_NEIGHBOURS];
+    // The random stream for the animal currently acting.
+    private final RandomStream random = new RandomStream(0);
+    // The simulation seed.
+    private final long seed;
+    // The step being computed.
+    private int step;
+
+    /**
+     * Create a context for a simulation with the given seed.
+     * @param seed The simulation seed.
+     */
+    public StepContext(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * Prepare for a new step.
+     * @param step The number of the step being computed.
+     */
+    public void startStep(int step)
+    {
+        this.step = step;
+    }
+
+    /**
+     * Prepare for the animal in the given cell to act, by reseeding the
+     * random stream for that cell at the current step.
+     * @param cell The cell of the animal at the start of the step.
+     */
+    public void startAct(int cell)
+    {
+        random.setSeed(Randomizer.seedFor(seed, step, cell));
+    }
+
+    /**
+     * @return The random stream for the animal currently acting.
+     */
+    public RandomStream getRandom()
+    {
+        return random;
+    }
+
+    /**
+     * @return The buffer for free cells around the acting animal.
+     */
+    public int[] getFreeCells()
+    {
+        return freeCells;
+    }
+
+    /**
+     * @return The buffer for cells around the acting animal.
+     */
+    public int[] getAdjacentCells()
+    {
+        return adjacentCells;
+    }
+
+    /**
+     * @return The buffer for cells around some other cell.
+     */
+    public int[] getNearbyCells()
+    {
+        return nearbyCells;
+    }
+
+    /**
+     * Draw a random cell from the first 'remaining' entries of the buffer.
+     * The drawn cell is swapped to position remaining - 1, so repeated
+     * calls with remaining, remaining - 1, ... give a random ordering
+     * one cell at a time (a partial Fisher-Yates shuffle). Callers that
+     * stop early only pay for the cells they have looked at.
+     * @param buffer Cell indices, as written by Field.getAdjacentCells or
+     *               Field.getFreeAdjacentCells.
+     * @param remaining How many cells have not been drawn yet. Must be
+     *                  greater than zero.
+     * @return The drawn cell index.
+     */
+    public int takeRandomCell(int[] buffer, int remaining)
+    {
+        return Field.takeRandomCell(buffer, remaining, random);
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * A strategy for computing one step of the simulation: every animal in
+ * the current field acts once, building the next state of the field.
+ *
+ * @version 7.1
+ */
+public interface StepEngine
+{
+    /**
+     * Let every animal in the current field act once.
+     * @param currentField The current state of the field.
+     * @param nextFieldState An empty field to be filled with the next state.
+     * @param conditions The conditions for this step.
+     * @param step The number of the step being computed, counting from 1.
+     */
+    void step(Field currentField, Field nextFieldState, Conditions conditions, int step);
+}
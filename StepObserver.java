@@ -0,0 +1,41 @@
+/**
+ * An observer of a running simulation. Views, statistics collectors
+ * and exporters register with a Simulator to be told about each
+ * completed step, so the simulation itself does not depend on any of
+ * them and can run without a display.
+ *
+ * @version 7.1
+ */
+public interface StepObserver
+{
+    /**
+     * Called after each completed step, and after a reset with step 0.
+     * @param step The step that has just completed.
+     * @param field The state of the field after the step. Observers must
+     *              not hold on to it, as it is reused by later steps; a
+     *              StepSnapshot of it can be kept, and read from other
+     *              threads.
+     */
+    void stepCompleted(int step, Field field);
+
+    /**
+     * Called when a run of the simulation ends, either because the
+     * requested number of steps was reached or because the simulation
+     * stopped being viable.
+     * @param step The last step completed.
+     * @param field The final state of the field.
+     */
+    default void simulationFinished(int step, Field field)
+    {
+    }
+
+    /**
+     * Return the name the observer is known by when steps are profiled.
+     * Observers that wrap another should return the wrapped one's name.
+     * @return The name, by default the observer's class name.
+     */
+    default String getObserverName()
+    {
+        return getClass().getName();
+    }
+}
@@ -0,0 +1,107 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one phase of a simulation step, so a
+ * recording shows where each step's time goes:
+ *   - "conditions": advancing the time of day, tide and weather;
+ *   - "clear": emptying the spare field for the next state;
+ *   - "act": every animal acting once, in the step engine;
+ *   - "swap": making the next state the current one;
+ *   - "observer": telling one observer, such as the view or a statistics
+ *     recorder, about the step (named in the observer field).
+ * The counts describe the field the phase worked on, after it ran.
+ *
+ * When no recording is running, the events cost next to nothing: the
+ * counts are only gathered for an event that will be committed.
+ *
+ * Record with, e.g.: java -XX:StartFlightRecording=filename=run.jfr Simulator
+ *
+ * @version 7.1
+ */
+@Name("habitat.StepPhase")
+@Label("Step Phase")
+@Category("Habitat Simulation")
+@Description("One phase of a simulation step")
+@StackTrace(false)
+public class StepPhaseEvent extends Event
+{
+    // The phase timed.
+    @Label("Phase")
+    private String phase;
+    // The observer told about the step, for an observer phase.
+    @Label("Observer")
+    private String observer;
+    // The step being computed or reported.
+    @Label("Step")
+    private int step;
+    // The live animals of each species.
+    @Label("Populations")
+    private String populations;
+    // The occupied cells, holding live or dead animals.
+    @Label("Occupied Cells")
+    private int occupiedCells;
+    // The chunks of cells allocated.
+    @Label("Chunks")
+    private int chunks;
+    // The cells in the field.
+    @Label("Cells")
+    private int cells;
+
+    /**
+     * Start timing a phase.
+     * @return The event, to be finished when the phase ends.
+     */
+    public static StepPhaseEvent start()
+    {
+        StepPhaseEvent event = new StepPhaseEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Stop timing a phase and commit the event if it is being recorded.
+     * @param phase The phase timed.
+     * @param step The step being computed or reported.
+     * @param field The field the phase worked on.
+     */
+    public void finish(String phase, int step, Field field)
+    {
+        finish(phase, null, step, field);
+    }
+
+    /**
+     * Stop timing the phase of telling an observer about a step and
+     * commit the event if it is being recorded.
+     * @param observer The observer told.
+     * @param step The step reported.
+     * @param field The field reported.
+     */
+    public void finish(StepObserver observer, int step, Field field)
+    {
+        finish("observer", observer, step, field);
+    }
+
+    /**
+     * Stop timing a phase, and fill in and commit the event if it is
+     * being recorded.
+     */
+    private void finish(String phase, StepObserver observer, int step, Field field)
+    {
+        end();
+        if(shouldCommit()) {
+            this.phase = phase;
+            this.observer = observer == null ? null : observer.getObserverName();
+            this.step = step;
+            populations = field.getPopulationDetails();
+            occupiedCells = field.getAnimals().size();
+            chunks = field.getChunkCount();
+            cells = field.getCellCount();
+            commit();
+        }
+    }
+}
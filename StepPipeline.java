@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * An observer that runs the work done after each step, such as
+ * statistics and rendering, as a pipeline of stages alongside the
+ * simulation, instead of on the simulation thread between steps.
+ *
+ * After each step the simulation thread takes a StepSnapshot of the
+ * field and hands it to the first stage, then gets on with the next
+ * step. Each stage runs on its own thread, and passes each snapshot on
+ * to the next stage once it has dealt with it. So with two stages,
+ * step N + 1 is computed while the first stage works on step N and the
+ * second on step N - 1, and the steps come at the pace of the slowest
+ * stage rather than of all of them added up.
+ *
+ * Each stage has a bounded queue of snapshots waiting for it. A stage
+ * that falls behind fills its queue and then holds up the stage before
+ * it, and in the end the simulation, so every stage sees every step in
+ * order and memory stays bounded. When a run finishes, the simulation
+ * thread waits until every stage has dealt with every step.
+ *
+ * Should a stage throw an exception or error, all the stages stop and
+ * the simulation thread stops waiting for them, and the first failure
+ * is rethrown, wrapped, to the simulation thread at its next step or
+ * at the end of the run.
+ *
+ * @version 7.1
+ */
+public class StepPipeline implements StepObserver
+{
+    // The snapshots waiting for each stage, by default.
+    public static final int DEFAULT_CAPACITY = 4;
+    // How often, in milliseconds, the simulation thread checks whether
+    // a stage has failed while it waits for the stages.
+    private static final long FAILURE_CHECK_INTERVAL = 100;
+
+    // The stages, in order.
+    private final List<Consumer<StepSnapshot>> stages = new ArrayList<>();
+    // The names of the stages' threads.
+    private final List<String> names = new ArrayList<>();
+    // The snapshots waiting for each stage.
+    private final List<BlockingQueue<StepSnapshot>> queues = new ArrayList<>();
+    // The most snapshots that may wait for each stage.
+    private final int capacity;
+    // Marks the end of a run in the queues.
+    private final StepSnapshot end;
+    // The threads running the stages, while a run is in progress.
+    private Thread[] threads;
+    // The number of snapshots taken.
+    private long sequence;
+    // The first exception or error thrown by a stage, or null.
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * Create a pipeline with no stages, and the default queue capacity.
+     * @param speciesTable The species in the simulation.
+     */
+    public StepPipeline(SpeciesTable speciesTable)
+    {
+        this(speciesTable, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a pipeline with no stages.
+     * @param speciesTable The species in the simulation.
+     * @param capacity The most snapshots that may wait for each stage.
+     */
+    public StepPipeline(SpeciesTable speciesTable, int capacity)
+    {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        end = new StepSnapshot(0, -1, new Field(1, 1, speciesTable));
+    }
+
+    /**
+     * Add a stage after the existing ones. Stages may not be added
+     * while a run is in progress.
+     * @param name The stage's name, used for its thread.
+     * @param stage What to do with the snapshot of each step.
+     */
+    public void addStage(String name, Consumer<StepSnapshot> stage)
+    {
+        if(threads != null) {
+            throw new IllegalStateException("The pipeline is running");
+        }
+        names.add(name);
+        stages.add(stage);
+        queues.add(new ArrayBlockingQueue<>(capacity));
+    }
+
+    /**
+     * Hand a snapshot of the field to the first stage, waiting while
+     * its queue is full. Starts the stages on the first step of a run.
+     * @throws IllegalStateException If a stage has failed.
+     */
+    public void stepCompleted(int step, Field field)
+    {
+        checkFailure();
+        if(stages.isEmpty()) {
+            return;
+        }
+        if(threads == null) {
+            start();
+        }
+        if(!offer(queues.get(0), new StepSnapshot(++sequence, step, field))) {
+            checkFailure();
+        }
+    }
+
+    /**
+     * Wait until every stage has dealt with every step of the run.
+     * @throws IllegalStateException If a stage has failed.
+     */
+    public void simulationFinished(int step, Field field)
+    {
+        finish();
+        checkFailure();
+    }
+
+    /**
+     * Start a thread for each stage.
+     */
+    private void start()
+    {
+        threads = new Thread[stages.size()];
+        for(int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> runStage(index), "pipeline-" + names.get(i));
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Tell the stages the run has ended and wait for them to finish,
+     * or to stop after a failure.
+     */
+    private void finish()
+    {
+        if(threads == null) {
+            return;
+        }
+        offer(queues.get(0), end);
+        boolean interrupted = false;
+        for(Thread thread : threads) {
+            while(thread.isAlive()) {
+                try {
+                    thread.join(FAILURE_CHECK_INTERVAL);
+                }
+                catch(InterruptedException e) {
+                    interrupted = true;
+                }
+                // A stage may have swallowed the interrupt that stopped it.
+                if(thread.isAlive() && failure.get() != null) {
+                    thread.interrupt();
+                }
+            }
+        }
+        threads = null;
+        // Drop the snapshots a failure left behind.
+        for(BlockingQueue<StepSnapshot> queue : queues) {
+            queue.clear();
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Throw the failure of a stage, if there was one, once the stages
+     * have stopped.
+     */
+    private void checkFailure()
+    {
+        if(failure.get() != null) {
+            finish();
+            Throwable cause = failure.getAndSet(null);
+            throw new IllegalStateException("A pipeline stage failed: " + cause, cause);
+        }
+    }
+
+    /**
+     * A stage's thread: deal with each snapshot and pass it on, until
+     * the end of the run or a failure.
+     * @param index The stage's position in the pipeline.
+     */
+    private void runStage(int index)
+    {
+        BlockingQueue<StepSnapshot> in = queues.get(index);
+        BlockingQueue<StepSnapshot> out = index + 1 < queues.size() ? queues.get(index + 1) : null;
+        try {
+            StepSnapshot snapshot;
+            do {
+                snapshot = in.take();
+                if(failure.get() != null) {
+                    return;
+                }
+                if(snapshot != end) {
+                    stages.get(index).accept(snapshot);
+                }
+                if(out != null) {
+                    out.put(snapshot);
+                }
+            } while(snapshot != end);
+        }
+        catch(InterruptedException e) {
+            // Only a failure interrupts a stage, and it has been recorded.
+        }
+        catch(Throwable e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Record the first failure of a stage, and interrupt the other
+     * stages so that none is left waiting for a stage that has stopped.
+     * @param cause What the stage threw.
+     */
+    private void fail(Throwable cause)
+    {
+        if(failure.compareAndSet(null, cause)) {
+            for(Thread thread : threads) {
+                if(thread != Thread.currentThread()) {
+                    thread.interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a snapshot to a queue, waiting while it is full, unless a
+     * stage fails. Interrupts do not end the wait, but the thread is
+     * left interrupted.
+     * @return true if the snapshot was added, false if a stage failed.
+     */
+    private boolean offer(BlockingQueue<StepSnapshot> queue, StepSnapshot snapshot)
+    {
+        boolean interrupted = false;
+        boolean added = false;
+        while(!added && failure.get() == null) {
+            try {
+                added = queue.offer(snapshot, FAILURE_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+            catch(InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return added;
+    }
+}
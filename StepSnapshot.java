@@ -0,0 +1,200 @@
+/**
+ * The state of a field after one step, copied so it can be kept and
+ * read from any number of threads while the simulation carries on. A
+ * snapshot never changes once made, and all of its fields are final,
+ * so a thread that is handed one sees it whole, without locks.
+ *
+ * Only what the animals look like from outside is kept: which cells
+ * are occupied, by which species, and whether alive or dead, in the
+ * order of the field's animal list, along with the live population of
+ * each species. Copying costs a few bytes per animal, whatever the
+ * size of the field.
+ *
+ * Snapshots are made by a StepSnapshotPublisher.
+ *
+ * @version 7.1
+ */
+public final class StepSnapshot
+{
+    // The number of the snapshot among those made by its publisher.
+    private final long sequence;
+    // The step the snapshot was taken after.
+    private final int step;
+    // The dimensions of the field.
+    private final int depth, width;
+    // The species in the field.
+    private final SpeciesTable speciesTable;
+    // The occupied cells, in the order of the field's animal list.
+    private final int[] cells;
+    // The state of each occupied cell, as a TrajectoryRecorder state byte.
+    private final byte[] states;
+    // The number of live animals of each species.
+    private final int[] liveCounts;
+
+    /**
+     * Copy the state of a field.
+     * @param sequence The number of the snapshot among those made by
+     *                 its publisher.
+     * @param step The step the field is the state after.
+     * @param field The field.
+     */
+    public StepSnapshot(long sequence, int step, Field field)
+    {
+        this.sequence = sequence;
+        this.step = step;
+        depth = field.getDepth();
+        width = field.getWidth();
+        speciesTable = field.getSpeciesTable();
+        int count = field.getAnimals().size();
+        cells = new int[count];
+        states = new byte[count];
+        for(int slot = 0; slot < count; slot++) {
+            cells[slot] = field.getOccupiedCell(slot);
+            states[slot] = (byte) TrajectoryRecorder.stateOf(field.getAnimals().get(slot));
+        }
+        liveCounts = new int[speciesTable.size()];
+        field.getLiveCounts(liveCounts);
+    }
+
+    /**
+     * Return the number of the snapshot among those made by its
+     * publisher, counting from 1. Unlike the step, it never goes back
+     * when the simulation is reset.
+     * @return The sequence number.
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * @return The step the snapshot was taken after.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The depth of the field.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the field.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * @return The number of cells in the field.
+     */
+    public int getCellCount()
+    {
+        return depth * width;
+    }
+
+    /**
+     * @return The species in the field.
+     */
+    public SpeciesTable getSpeciesTable()
+    {
+        return speciesTable;
+    }
+
+    /**
+     * @return The number of occupied cells, holding live or dead animals.
+     */
+    public int getOccupiedCount()
+    {
+        return cells.length;
+    }
+
+    /**
+     * Return an occupied cell.
+     * @param i The position of the cell's animal in the field's animal
+     *          list, from 0 to getOccupiedCount() - 1.
+     * @return The cell index (row * width + col).
+     */
+    public int getOccupiedCell(int i)
+    {
+        return cells[i];
+    }
+
+    /**
+     * Return the species code of the animal in an occupied cell.
+     * @param i The position of the cell's animal in the field's animal
+     *          list, from 0 to getOccupiedCount() - 1.
+     * @return The species code.
+     */
+    public int getSpeciesCode(int i)
+    {
+        return (states[i] & ~TrajectoryRecorder.DEAD & 0xFF) - 1;
+    }
+
+    /**
+     * Return whether the animal in an occupied cell is alive.
+     * @param i The position of the cell's animal in the field's animal
+     *          list, from 0 to getOccupiedCount() - 1.
+     * @return true if it is alive.
+     */
+    public boolean isAlive(int i)
+    {
+        return (states[i] & TrajectoryRecorder.DEAD) == 0;
+    }
+
+    /**
+     * Return the number of live animals of a species.
+     * @param species The species.
+     * @return The number of live animals of that species.
+     */
+    public int getLiveCount(Species species)
+    {
+        return liveCounts[species.getCode()];
+    }
+
+    /**
+     * Copy the number of live animals of each species.
+     * @param counts Where to write the counts, indexed by species
+     *               code. Must have room for every species.
+     */
+    public void getLiveCounts(int[] counts)
+    {
+        System.arraycopy(liveCounts, 0, counts, 0, liveCounts.length);
+    }
+
+    /**
+     * Return the number of live animals of each species.
+     * @return A description such as "Salmon: 10 Sardine: 4 ...".
+     */
+    public String getPopulationDetails()
+    {
+        StringBuilder details = new StringBuilder();
+        for(Species species : speciesTable.getAll()) {
+            details.append(species.getDisplayName())
+                   .append(": ")
+                   .append(liveCounts[species.getCode()])
+                   .append(' ');
+        }
+        return details.toString().trim();
+    }
+
+    /**
+     * Return whether there was at least one live animal of every species.
+     * @return true if every species was still alive.
+     */
+    public boolean isViable()
+    {
+        for(int count : liveCounts) {
+            if(count == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
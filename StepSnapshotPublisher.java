@@ -0,0 +1,35 @@
+/**
+ * An observer that takes a StepSnapshot of the field after every step
+ * and publishes it, so other threads can render, count or export a
+ * step while the simulation computes the next one. The simulation
+ * thread never waits for them: publishing is a single volatile write,
+ * and a reader that falls behind simply sees the latest step when it
+ * next looks, comparing sequence numbers to tell whether it has
+ * changed.
+ *
+ * @version 7.1
+ */
+public class StepSnapshotPublisher implements StepObserver
+{
+    // The latest snapshot, or null before the first.
+    private volatile StepSnapshot latest;
+    // The number of snapshots made, written only by the simulation thread.
+    private long sequence;
+
+    /**
+     * Take and publish a snapshot of the field.
+     */
+    public void stepCompleted(int step, Field field)
+    {
+        latest = new StepSnapshot(++sequence, step, field);
+    }
+
+    /**
+     * Return the latest snapshot. May be called from any thread.
+     * @return The snapshot, or null if no step has been published.
+     */
+    public StepSnapshot getLatest()
+    {
+        return latest;
+    }
+}
@@ -0,0 +1,630 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Where an EntitySimulator keeps its primitive state: the columns of
+ * its EntityStore and its cell grids. A column can be
+ *   - on the heap, as an ordinary array;
+ *   - off the heap, in direct buffers, so a very large world puts
+ *     almost no pressure on the garbage collector and is not limited
+ *     by the heap size;
+ *   - mapped from a file, so the world is also visible to another
+ *     process (see below).
+ * Off the heap, a column is a sequence of fixed-size pages, so it grows
+ * without copying and no single buffer needs to exceed the 2 GB a
+ * ByteBuffer can address.
+ *
+ * A mapped world is a directory holding a file per column, named after
+ * the column with the extension ".col" and holding its entries in
+ * native byte order, and a file "header.col" of HEADER_INTS native-order
+ * ints: MAGIC, the depth, the width, the step, which grid ("grid0" or
+ * "grid1") is current, and one more than the highest entity id in use.
+ * The header is rewritten after each step.
+ *
+ * @version 7.1
+ */
+public class StoreMemory implements Closeable
+{
+    // Identifies a mapped world's header ("HWLD").
+    public static final int MAGIC = 0x48574C44;
+    // The number of ints in a mapped world's header.
+    public static final int HEADER_INTS = 6;
+    // The number of bits of an entry index that select an entry in its page.
+    private static final int PAGE_BITS = 16;
+    // The number of entries in a page.
+    private static final int PAGE_ENTRIES = 1 << PAGE_BITS;
+    // The bits of an entry index that select an entry in its page.
+    private static final int PAGE_MASK = PAGE_ENTRIES - 1;
+
+    // Where columns are allocated.
+    private enum Kind { HEAP, DIRECT, MAPPED }
+
+    // Where this memory allocates its columns.
+    private final Kind kind;
+    // The directory of a mapped world, or null.
+    private final Path directory;
+    // The files of a mapped world's columns, to close with it.
+    private final List<FileChannel> channels = new ArrayList<>();
+    // The header of a mapped world, or null.
+    private final ByteBuffer header;
+
+    /**
+     * Create memory on the heap.
+     * @return The memory.
+     */
+    public static StoreMemory onHeap()
+    {
+        return new StoreMemory(Kind.HEAP, null);
+    }
+
+    /**
+     * Create memory in direct buffers, outside the heap.
+     * @return The memory.
+     */
+    public static StoreMemory offHeap()
+    {
+        return new StoreMemory(Kind.DIRECT, null);
+    }
+
+    /**
+     * Create memory mapped from files in a directory, replacing any
+     * world already mapped there.
+     * @param directory The directory, created if it does not exist.
+     * @return The memory.
+     * @throws IOException If the directory or its files cannot be created.
+     */
+    public static StoreMemory mapped(Path directory) throws IOException
+    {
+        Files.createDirectories(directory);
+        try {
+            return new StoreMemory(Kind.MAPPED, directory);
+        }
+        catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Create memory of the given kind.
+     */
+    private StoreMemory(Kind kind, Path directory)
+    {
+        this.kind = kind;
+        this.directory = directory;
+        if(kind == Kind.MAPPED) {
+            header = map(openChannel("header"), 0, HEADER_INTS * Integer.BYTES);
+            header.putInt(0, MAGIC);
+        }
+        else {
+            header = null;
+        }
+    }
+
+    /**
+     * Allocate a column of bytes.
+     * @param name The name of the column, which names its file in a
+     *             mapped world.
+     * @param length The number of entries to allocate at once.
+     * @param fill The value of every entry when it is allocated.
+     * @return The column.
+     */
+    public ByteColumn byteColumn(String name, int length, byte fill)
+    {
+        if(kind == Kind.HEAP) {
+            return new HeapByteColumn(length, fill);
+        }
+        return new PagedByteColumn(new Pages(name, 0), length, fill);
+    }
+
+    /**
+     * Allocate a column of shorts.
+     * @param name The name of the column.
+     * @param length The number of entries to allocate at once.
+     * @return The column, with every entry 0.
+     */
+    public ShortColumn shortColumn(String name, int length)
+    {
+        if(kind == Kind.HEAP) {
+            return new HeapShortColumn(length);
+        }
+        return new PagedShortColumn(new Pages(name, 1), length);
+    }
+
+    /**
+     * Allocate a column of ints.
+     * @param name The name of the column.
+     * @param length The number of entries to allocate at once.
+     * @param fill The value of every entry when it is allocated.
+     * @return The column.
+     */
+    public IntColumn intColumn(String name, int length, int fill)
+    {
+        if(kind == Kind.HEAP) {
+            return new HeapIntColumn(length, fill);
+        }
+        return new PagedIntColumn(new Pages(name, 2), length, fill);
+    }
+
+    /**
+     * Record the state of a step in a mapped world's header. Does
+     * nothing for other memory.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param step The step just completed.
+     * @param currentGrid Which grid is current, 0 or 1.
+     * @param highWater One more than the highest entity id in use.
+     */
+    public void writeHeader(int depth, int width, int step, int currentGrid, int highWater)
+    {
+        if(header != null) {
+            header.putInt(4, depth).putInt(8, width).putInt(12, step)
+                  .putInt(16, currentGrid).putInt(20, highWater);
+        }
+    }
+
+    /**
+     * @return Whether the memory is outside the heap.
+     */
+    public boolean isOffHeap()
+    {
+        return kind != Kind.HEAP;
+    }
+
+    /**
+     * Close the files of a mapped world. Their contents stay on disk;
+     * the mappings last until the columns are no longer referenced.
+     * @throws IOException If a file cannot be closed.
+     */
+    public void close() throws IOException
+    {
+        for(FileChannel channel : channels) {
+            channel.close();
+        }
+        channels.clear();
+    }
+
+    /**
+     * Open the file of a column in a mapped world, emptying it.
+     */
+    private FileChannel openChannel(String name)
+    {
+        try {
+            FileChannel channel = FileChannel.open(directory.resolve(name + ".col"),
+                                                   StandardOpenOption.CREATE,
+                                                   StandardOpenOption.READ,
+                                                   StandardOpenOption.WRITE,
+                                                   StandardOpenOption.TRUNCATE_EXISTING);
+            channels.add(channel);
+            return channel;
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Cannot create the column " + name, e);
+        }
+    }
+
+    /**
+     * Map a region of a file, extending the file if needed.
+     */
+    private static ByteBuffer map(FileChannel channel, long position, int bytes)
+    {
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE, position, bytes)
+                          .order(ByteOrder.nativeOrder());
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Cannot map a page of a column", e);
+        }
+    }
+
+    /**
+     * A column of bytes.
+     */
+    public abstract static class ByteColumn
+    {
+        /**
+         * @return The entry at the given index.
+         */
+        public abstract byte get(int index);
+
+        /**
+         * Set the entry at the given index.
+         */
+        public abstract void set(int index, byte value);
+
+        /**
+         * Set a range of entries to a value.
+         * @param from The first entry.
+         * @param to The entry after the last.
+         * @param value The value.
+         */
+        public abstract void fill(int from, int to, byte value);
+
+        /**
+         * Make room for at least the given number of entries.
+         */
+        public abstract void ensureLength(int length);
+
+        /**
+         * @return The number of entries allocated.
+         */
+        public abstract int length();
+    }
+
+    /**
+     * A column of shorts.
+     */
+    public abstract static class ShortColumn
+    {
+        /**
+         * @return The entry at the given index.
+         */
+        public abstract short get(int index);
+
+        /**
+         * Set the entry at the given index.
+         */
+        public abstract void set(int index, short value);
+
+        /**
+         * Make room for at least the given number of entries.
+         */
+        public abstract void ensureLength(int length);
+    }
+
+    /**
+     * A column of ints.
+     */
+    public abstract static class IntColumn
+    {
+        /**
+         * @return The entry at the given index.
+         */
+        public abstract int get(int index);
+
+        /**
+         * Set the entry at the given index.
+         */
+        public abstract void set(int index, int value);
+
+        /**
+         * Set every allocated entry to a value.
+         */
+        public abstract void fill(int value);
+
+        /**
+         * Make room for at least the given number of entries.
+         */
+        public abstract void ensureLength(int length);
+    }
+
+    /**
+     * Return the capacity to grow an array to.
+     */
+    private static int grownLength(int current, int needed)
+    {
+        return (int) Math.min(Math.max(needed, 2L * current), Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * A column of bytes in an array.
+     */
+    private static final class HeapByteColumn extends ByteColumn
+    {
+        // The value of a new entry.
+        private final byte fill;
+        // The entries.
+        private byte[] values;
+
+        HeapByteColumn(int length, byte fill)
+        {
+            this.fill = fill;
+            values = new byte[length];
+            Arrays.fill(values, fill);
+        }
+
+        public byte get(int index)
+        {
+            return values[index];
+        }
+
+        public void set(int index, byte value)
+        {
+            values[index] = value;
+        }
+
+        public void fill(int from, int to, byte value)
+        {
+            Arrays.fill(values, from, to, value);
+        }
+
+        public void ensureLength(int length)
+        {
+            if(length > values.length) {
+                int old = values.length;
+                values = Arrays.copyOf(values, grownLength(old, length));
+                Arrays.fill(values, old, values.length, fill);
+            }
+        }
+
+        public int length()
+        {
+            return values.length;
+        }
+    }
+
+    /**
+     * A column of shorts in an array.
+     */
+    private static final class HeapShortColumn extends ShortColumn
+    {
+        // The entries.
+        private short[] values;
+
+        HeapShortColumn(int length)
+        {
+            values = new short[length];
+        }
+
+        public short get(int index)
+        {
+            return values[index];
+        }
+
+        public void set(int index, short value)
+        {
+            values[index] = value;
+        }
+
+        public void ensureLength(int length)
+        {
+            if(length > values.length) {
+                values = Arrays.copyOf(values, grownLength(values.length, length));
+            }
+        }
+    }
+
+    /**
+     * A column of ints in an array.
+     */
+    private static final class HeapIntColumn extends IntColumn
+    {
+        // The value of a new entry.
+        private final int fill;
+        // The entries.
+        private int[] values;
+
+        HeapIntColumn(int length, int fill)
+        {
+            this.fill = fill;
+            values = new int[length];
+            Arrays.fill(values, fill);
+        }
+
+        public int get(int index)
+        {
+            return values[index];
+        }
+
+        public void set(int index, int value)
+        {
+            values[index] = value;
+        }
+
+        public void fill(int value)
+        {
+            Arrays.fill(values, value);
+        }
+
+        public void ensureLength(int length)
+        {
+            if(length > values.length) {
+                int old = values.length;
+                values = Arrays.copyOf(values, grownLength(old, length));
+                Arrays.fill(values, old, values.length, fill);
+            }
+        }
+    }
+
+    /**
+     * The pages of a column outside the heap, allocated a page at a time.
+     */
+    private final class Pages
+    {
+        // The log2 of the bytes of an entry.
+        private final int entryShift;
+        // The file of the column in a mapped world, or null.
+        private final FileChannel channel;
+        // The pages, each PAGE_ENTRIES entries.
+        ByteBuffer[] pages = new ByteBuffer[0];
+
+        /**
+         * @param name The name of the column.
+         * @param entryShift The log2 of the bytes of an entry.
+         */
+        Pages(String name, int entryShift)
+        {
+            this.entryShift = entryShift;
+            channel = kind == Kind.MAPPED ? openChannel(name) : null;
+        }
+
+        /**
+         * Allocate pages until there are at least the given number of
+         * entries.
+         * @return The index of the first new page.
+         */
+        int ensureLength(int length)
+        {
+            int first = pages.length;
+            int needed = (int) (((long) length + PAGE_MASK) >>> PAGE_BITS);
+            if(needed > first) {
+                pages = Arrays.copyOf(pages, needed);
+                int pageBytes = PAGE_ENTRIES << entryShift;
+                for(int page = first; page < needed; page++) {
+                    pages[page] = kind == Kind.MAPPED
+                        ? map(channel, (long) page * pageBytes, pageBytes)
+                        : ByteBuffer.allocateDirect(pageBytes).order(ByteOrder.nativeOrder());
+                }
+            }
+            return first;
+        }
+
+        /**
+         * @return The number of entries allocated.
+         */
+        int length()
+        {
+            return (int) Math.min((long) pages.length << PAGE_BITS, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * A column of bytes in pages.
+     */
+    private static final class PagedByteColumn extends ByteColumn
+    {
+        // Allocates the pages.
+        private final Pages allocator;
+        // The pages of the entries, as last allocated.
+        private ByteBuffer[] pages;
+        // The value of a new entry.
+        private final byte fill;
+
+        PagedByteColumn(Pages pages, int length, byte fill)
+        {
+            allocator = pages;
+            this.fill = fill;
+            ensureLength(length);
+        }
+
+        public byte get(int index)
+        {
+            return pages[index >>> PAGE_BITS].get(index & PAGE_MASK);
+        }
+
+        public void set(int index, byte value)
+        {
+            pages[index >>> PAGE_BITS].put(index & PAGE_MASK, value);
+        }
+
+        public void fill(int from, int to, byte value)
+        {
+            for(int index = from; index < to; index++) {
+                set(index, value);
+            }
+        }
+
+        public void ensureLength(int length)
+        {
+            int first = allocator.ensureLength(length);
+            pages = allocator.pages;
+            if(fill != 0) {
+                fill(first << PAGE_BITS, allocator.length(), fill);
+            }
+        }
+
+        public int length()
+        {
+            return allocator.length();
+        }
+    }
+
+    /**
+     * A column of shorts in pages.
+     */
+    private static final class PagedShortColumn extends ShortColumn
+    {
+        // Allocates the pages.
+        private final Pages allocator;
+        // The pages of the entries, as last allocated.
+        private ByteBuffer[] pages;
+
+        PagedShortColumn(Pages pages, int length)
+        {
+            allocator = pages;
+            ensureLength(length);
+        }
+
+        public short get(int index)
+        {
+            return pages[index >>> PAGE_BITS].getShort((index & PAGE_MASK) << 1);
+        }
+
+        public void set(int index, short value)
+        {
+            pages[index >>> PAGE_BITS].putShort((index & PAGE_MASK) << 1, value);
+        }
+
+        public void ensureLength(int length)
+        {
+            // New pages are all zero.
+            allocator.ensureLength(length);
+            pages = allocator.pages;
+        }
+    }
+
+    /**
+     * A column of ints in pages.
+     */
+    private static final class PagedIntColumn extends IntColumn
+    {
+        // Allocates the pages.
+        private final Pages allocator;
+        // The pages of the entries, as last allocated.
+        private ByteBuffer[] pages;
+        // The value of a new entry.
+        private final int fill;
+
+        PagedIntColumn(Pages pages, int length, int fill)
+        {
+            allocator = pages;
+            this.fill = fill;
+            ensureLength(length);
+        }
+
+        public int get(int index)
+        {
+            return pages[index >>> PAGE_BITS].getInt((index & PAGE_MASK) << 2);
+        }
+
+        public void set(int index, int value)
+        {
+            pages[index >>> PAGE_BITS].putInt((index & PAGE_MASK) << 2, value);
+        }
+
+        public void fill(int value)
+        {
+            fillFrom(0, value);
+        }
+
+        public void ensureLength(int length)
+        {
+            int first = allocator.ensureLength(length);
+            pages = allocator.pages;
+            if(fill != 0) {
+                fillFrom(first, fill);
+            }
+        }
+
+        /**
+         * Set every entry from the given page on to a value.
+         */
+        private void fillFrom(int firstPage, int value)
+        {
+            for(int page = firstPage; page < pages.length; page++) {
+                for(int offset = 0; offset < PAGE_ENTRIES << 2; offset += 4) {
+                    pages[page].putInt(offset, value);
+                }
+            }
+        }
+    }
+}
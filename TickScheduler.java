@@ -0,0 +1,220 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides when a simulation takes its next step, and how often its
+ * display is updated. Steps can run:
+ *   - as fast as possible (a rate of 0), for batch runs;
+ *   - at a target number of steps per second, for demonstrations. Each
+ *     tick is due a fixed period after the previous one was due, not
+ *     after it happened, so the time spent stepping and sleeping
+ *     inaccuracies do not accumulate into drift.
+ * Independently, observers wrapped with throttle() are only told about
+ * a limited number of steps per second, so a display can be updated at
+ * its own rate whatever the simulation's.
+ *
+ * A scheduler can be paused, resumed and single-stepped from another
+ * thread (e.g. the event dispatch thread) while a simulation runs.
+ *
+ * @version 7.1
+ */
+public class TickScheduler
+{
+    // How far a simulation may fall behind its rate before the schedule
+    // restarts from the present instead of trying to catch up.
+    private static final long MAX_LAG = TimeUnit.MILLISECONDS.toNanos(250);
+
+    // The time between steps in nanoseconds, or 0 to run flat out.
+    private volatile long stepInterval;
+    // The time between display updates in nanoseconds, or 0 for every step.
+    private volatile long frameInterval;
+    // When the next step is due.
+    private long nextTick;
+    // Whether stepping is paused.
+    private boolean paused;
+    // The steps that may be taken while paused.
+    private int singleSteps;
+
+    /**
+     * Create a scheduler that runs as fast as possible and shows every step.
+     */
+    public TickScheduler()
+    {
+        this(0, 0);
+    }
+
+    /**
+     * Create a scheduler with the given rates.
+     * @param stepsPerSecond The target steps per second, or 0 to run
+     *                       as fast as possible.
+     * @param framesPerSecond The most display updates per second, or 0
+     *                        to show every step.
+     */
+    public TickScheduler(double stepsPerSecond, double framesPerSecond)
+    {
+        setStepsPerSecond(stepsPerSecond);
+        setFramesPerSecond(framesPerSecond);
+        nextTick = System.nanoTime();
+    }
+
+    /**
+     * Wait until the next step is due: while paused, until resumed or
+     * single-stepped, and then until the step's time has come. Returns
+     * early if the thread is interrupted, leaving it interrupted.
+     */
+    public void awaitTick()
+    {
+        synchronized(this) {
+            while(paused && singleSteps == 0) {
+                try {
+                    wait();
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if(paused) {
+                // Single steps are taken at once, and the schedule
+                // restarts from them.
+                singleSteps--;
+                nextTick = System.nanoTime();
+                return;
+            }
+        }
+
+        long interval = stepInterval;
+        long now = System.nanoTime();
+        if(interval == 0) {
+            nextTick = now;
+            return;
+        }
+        if(now - nextTick > MAX_LAG) {
+            nextTick = now;
+        }
+        while(now < nextTick && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(nextTick - now);
+            now = System.nanoTime();
+        }
+        nextTick += interval;
+    }
+
+    /**
+     * Stop the simulation before its next step.
+     */
+    public synchronized void pause()
+    {
+        paused = true;
+    }
+
+    /**
+     * Let a paused simulation carry on.
+     */
+    public synchronized void resume()
+    {
+        paused = false;
+        singleSteps = 0;
+        notifyAll();
+    }
+
+    /**
+     * Let a paused simulation take one more step.
+     */
+    public synchronized void step()
+    {
+        if(paused) {
+            singleSteps++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return Whether stepping is paused.
+     */
+    public synchronized boolean isPaused()
+    {
+        return paused;
+    }
+
+    /**
+     * Set the target rate of steps.
+     * @param stepsPerSecond The target steps per second, or 0 to run
+     *                       as fast as possible.
+     */
+    public void setStepsPerSecond(double stepsPerSecond)
+    {
+        stepInterval = toInterval(stepsPerSecond);
+    }
+
+    /**
+     * @return The target steps per second, or 0 when running as fast as
+     *         possible.
+     */
+    public double getStepsPerSecond()
+    {
+        long interval = stepInterval;
+        return interval == 0 ? 0 : (double) TimeUnit.SECONDS.toNanos(1) / interval;
+    }
+
+    /**
+     * Set the most display updates per second.
+     * @param framesPerSecond The most updates per second, or 0 to show
+     *                        every step.
+     */
+    public void setFramesPerSecond(double framesPerSecond)
+    {
+        frameInterval = toInterval(framesPerSecond);
+    }
+
+    /**
+     * Wrap an observer, such as a view, so it is told about steps at no
+     * more than this scheduler's frame rate. The steps in between are
+     * skipped, but the last step of a run is always shown.
+     * @param observer The observer to throttle.
+     * @return The throttled observer.
+     */
+    public StepObserver throttle(StepObserver observer)
+    {
+        return new StepObserver() {
+            // When the next update is due.
+            private long nextFrame = System.nanoTime();
+            // The last step passed on.
+            private int shownStep = -1;
+
+            public void stepCompleted(int step, Field field)
+            {
+                long now = System.nanoTime();
+                if(now - nextFrame >= 0 || step == 0) {
+                    nextFrame = now + frameInterval;
+                    shownStep = step;
+                    observer.stepCompleted(step, field);
+                }
+            }
+
+            public void simulationFinished(int step, Field field)
+            {
+                if(step != shownStep) {
+                    shownStep = step;
+                    observer.stepCompleted(step, field);
+                }
+                observer.simulationFinished(step, field);
+            }
+
+            public String getObserverName()
+            {
+                return observer.getObserverName();
+            }
+        };
+    }
+
+    /**
+     * Convert a rate to the interval between events.
+     */
+    private static long toInterval(double perSecond)
+    {
+        if(perSecond < 0 || Double.isNaN(perSecond)) {
+            throw new IllegalArgumentException("Rates must not be negative");
+        }
+        return perSecond == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+    }
+}
@@ -0,0 +1,334 @@
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a trajectory written by a TrajectoryRecorder, showing each
+ * recorded step to an observer such as a SimulatorView as if the
+ * simulation were running, but without simulating anything.
+ *
+ * The field handed to the observer is rebuilt from the recording for
+ * each step shown. It holds one stand-in animal per species and state,
+ * so it is only fit for display and population counts.
+ *
+ * Run with: java TrajectoryPlayer file [--from step] [--to step]
+ *           [--speed steps-per-second] [--species file]
+ *
+ * @version 7.1
+ */
+public class TrajectoryPlayer
+{
+    // The speed of a replay from the command line, in steps per second.
+    private static final double DEFAULT_SPEED = 20;
+    // How to run the player from the command line.
+    private static final String USAGE =
+        "Usage: java TrajectoryPlayer file [--from step] [--to step]"
+        + " [--speed steps-per-second] [--species file]";
+
+    // The recording.
+    private final DataInputStream in;
+    // The dimensions of the recorded field.
+    private final int depth, width;
+    // The state of each cell in the current frame.
+    private final byte[] states;
+    // The field shown to observers, rebuilt for each step shown.
+    private final Field field;
+    // The stand-in animals of each species, alive and dead, by code.
+    private final Animal[] alive, dead;
+    // The step of the current frame, or -1 before the first.
+    private int step = -1;
+
+    /**
+     * Replay a recording from the command line in a SimulatorView, or
+     * as console statistics when there is no display.
+     *   --from and --to give the first and last steps to show,
+     *   --speed the steps shown per second (0 for as fast as possible),
+     *   --species the species file the run was recorded with.
+     * @param args The recording, then the command line options.
+     */
+    public static void main(String[] args)
+    {
+        if(args.length == 0 || args.length % 2 == 0) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        int from = 0;
+        int to = Integer.MAX_VALUE;
+        double speed = DEFAULT_SPEED;
+        String speciesFile = null;
+        try {
+            for(int i = 1; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch(args[i]) {
+                    case "--from" -> from = Integer.parseInt(value);
+                    case "--to" -> to = Integer.parseInt(value);
+                    case "--speed" -> speed = Double.parseDouble(value);
+                    case "--species" -> speciesFile = value;
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        }
+        catch(IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            SpeciesTable speciesTable = speciesFile == null ? SpeciesTable.getDefault()
+                                                            : SpeciesTable.load(Path.of(speciesFile));
+            TrajectoryPlayer player = new TrajectoryPlayer(Path.of(args[0]), speciesTable);
+            if(GraphicsEnvironment.isHeadless()) {
+                StatsRecorder recorder = new StatsRecorder(
+                    speciesTable, List.of(new ConsoleStatsSink(speciesTable)));
+                player.play(recorder, from, to, speed);
+                recorder.close();
+            }
+            else {
+                player.play(new SimulatorView(player.getDepth(), player.getWidth(), speciesTable),
+                            from, to, speed);
+            }
+            player.close();
+        }
+        catch(IOException | IllegalArgumentException e) {
+            System.err.println("Cannot replay: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Open a recording.
+     * @param file The recording.
+     * @param speciesTable The species the run was recorded with.
+     * @throws IOException If the file cannot be read, is not a recording
+     *                     of a supported version, or was recorded with
+     *                     different species.
+     */
+    public TrajectoryPlayer(Path file, SpeciesTable speciesTable) throws IOException
+    {
+        in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        if(in.readInt() != TrajectoryRecorder.MAGIC) {
+            in.close();
+            throw new IOException(file + " is not a trajectory");
+        }
+        int version = in.readInt();
+        if(version != TrajectoryRecorder.VERSION) {
+            in.close();
+            throw new IOException(file + " has unsupported version " + version);
+        }
+        depth = in.readInt();
+        width = in.readInt();
+        in.readInt(); // The keyframe interval.
+        int speciesCount = in.readInt();
+        boolean sameSpecies = speciesCount == speciesTable.size();
+        for(int code = 0; code < speciesCount; code++) {
+            String key = in.readUTF();
+            sameSpecies = sameSpecies && speciesTable.get(code).getKey().equals(key);
+        }
+        if(!sameSpecies || depth <= 0 || width <= 0) {
+            in.close();
+            throw new IOException(file + " was recorded with different species");
+        }
+
+        states = new byte[depth * width];
+        field = new Field(depth, width, speciesTable);
+        alive = new Animal[speciesCount];
+        dead = new Animal[speciesCount];
+        for(Species species : speciesTable.getAll()) {
+            alive[species.getCode()] = new Animal(species, Field.NO_CELL, false, 0, 0);
+            dead[species.getCode()] = new Animal(species, Field.NO_CELL, false, 0, 0);
+            dead[species.getCode()].setDead();
+        }
+    }
+
+    /**
+     * Show the recorded steps in a range to an observer, paced to the
+     * given speed, then tell it the replay has finished.
+     * @param observer What to show the steps to.
+     * @param fromStep The first step to show.
+     * @param toStep The last step to show.
+     * @param stepsPerSecond The steps to show per second, or 0 to show
+     *                       them as fast as the observer allows.
+     * @throws IOException If the recording cannot be read.
+     */
+    public void play(StepObserver observer, int fromStep, int toStep, double stepsPerSecond)
+        throws IOException
+    {
+        long interval = stepsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / stepsPerSecond)
+                                           : 0;
+        long next = System.nanoTime();
+        int lastShown = -1;
+        while(nextFrame() && step <= toStep) {
+            if(step >= fromStep) {
+                long wait = next - System.nanoTime();
+                if(wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                next = Math.max(next, System.nanoTime()) + interval;
+                observer.stepCompleted(step, getField());
+                lastShown = step;
+            }
+        }
+        if(lastShown >= 0) {
+            observer.simulationFinished(lastShown, field);
+        }
+    }
+
+    /**
+     * Read the next frame of the recording.
+     * @return false if there are no more frames.
+     * @throws IOException If the recording cannot be read or is corrupt.
+     */
+    public boolean nextFrame() throws IOException
+    {
+        int type = in.read();
+        if(type < 0) {
+            return false;
+        }
+        try {
+            step = in.readInt();
+            if(type == TrajectoryRecorder.KEYFRAME) {
+                readKeyframe();
+            }
+            else if(type == TrajectoryRecorder.DELTA) {
+                readDelta();
+            }
+            else {
+                throw new IOException("Corrupt trajectory frame type " + type);
+            }
+        }
+        catch(EOFException e) {
+            // A run cut short leaves a partial last frame.
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The step of the current frame, or -1 before the first.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * Return the field as it was at the current frame.
+     * @return The field. It is rebuilt by the next call.
+     */
+    public Field getField()
+    {
+        field.clear();
+        for(int cell = 0; cell < states.length; cell++) {
+            int state = states[cell] & 0xFF;
+            if(state != 0) {
+                int code = (state & ~TrajectoryRecorder.DEAD) - 1;
+                Animal[] standIns = (state & TrajectoryRecorder.DEAD) == 0 ? alive : dead;
+                field.placeAnimal(standIns[code], cell);
+            }
+        }
+        return field;
+    }
+
+    /**
+     * @return The depth of the recorded field.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the recorded field.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Close the recording.
+     * @throws IOException If it cannot be closed.
+     */
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    /**
+     * Replace the cell states with a whole grid.
+     */
+    private void readKeyframe() throws IOException
+    {
+        int cell = 0;
+        while(cell < states.length) {
+            int empty = readVarint();
+            int full = readVarint();
+            if(empty < 0 || full < 0 || cell + empty + full > states.length) {
+                throw new IOException("Corrupt trajectory keyframe");
+            }
+            for(int end = cell + empty; cell < end; cell++) {
+                states[cell] = 0;
+            }
+            in.readFully(states, cell, full);
+            for(int end = cell + full; cell < end; cell++) {
+                checkState(states[cell]);
+            }
+        }
+    }
+
+    /**
+     * Apply the changes to the cell states.
+     */
+    private void readDelta() throws IOException
+    {
+        int changes = readVarint();
+        int cell = 0;
+        for(int i = 0; i < changes; i++) {
+            cell += readVarint();
+            if(cell < 0 || cell >= states.length) {
+                throw new IOException("Corrupt trajectory delta");
+            }
+            states[cell] = in.readByte();
+            checkState(states[cell]);
+        }
+    }
+
+    /**
+     * Check that a state byte is either empty or names a species of
+     * the recording. A dead flag on its own names no species.
+     */
+    private void checkState(byte state) throws IOException
+    {
+        if(state == 0) {
+            return;
+        }
+        int code = ((state & 0xFF) & ~TrajectoryRecorder.DEAD) - 1;
+        if(code < 0 || code >= alive.length) {
+            throw new IOException("Corrupt trajectory cell state " + state);
+        }
+    }
+
+    /**
+     * Read an unsigned LEB128 varint.
+     */
+    private int readVarint() throws IOException
+    {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            int b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt trajectory varint");
+    }
+}
@@ -0,0 +1,337 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * An observer that records the trajectory of a simulation, i.e. what
+ * is in every cell after every step, so the run can be replayed by a
+ * TrajectoryPlayer without simulating it again.
+ *
+ * Each step is recorded as a delta: only the cells whose contents
+ * changed since the previous step. The changes are found from the
+ * field's list of animals rather than by scanning the grid, so the
+ * cost of a step and the size of the file depend on how many animals
+ * there are and how much they do, not on the area of the field. Every
+ * keyframe interval steps, and after a reset, the whole grid is
+ * recorded instead, run-length encoded, so a replay can start there.
+ *
+ * The stream, big-endian, starts with the int MAGIC, the int VERSION,
+ * the depth, the width, the keyframe interval, the number of species
+ * and each species' key (in modified UTF-8). Each frame is then a
+ * byte type (KEYFRAME or DELTA) and the int step, followed by
+ *   for a keyframe: runs covering every cell in order, each a varint
+ *   count of empty cells, a varint count of occupied cells and one
+ *   state byte per occupied cell;
+ *   for a delta: a varint count of changed cells, then for each, in
+ *   cell order, the varint distance from the previous changed cell
+ *   (or from cell 0) and its new state byte.
+ * A state byte is 0 for an empty cell, or the species code plus one,
+ * with the DEAD bit set for a dead animal.
+ *
+ * @version 7.1
+ */
+public class TrajectoryRecorder implements StepObserver
+{
+    // Identifies a trajectory stream ("HTRJ").
+    public static final int MAGIC = 0x4854524A;
+    // The version of the format written.
+    public static final int VERSION = 1;
+    // The steps between keyframes, by default.
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 50;
+    // The frame type of a whole grid.
+    public static final int KEYFRAME = 1;
+    // The frame type of the changes since the previous frame.
+    public static final int DELTA = 2;
+    // The bit set in a state byte for a dead animal.
+    public static final int DEAD = 0x80;
+
+    // Where the frames go.
+    private final DataOutputStream out;
+    // The steps between keyframes.
+    private final int keyframeInterval;
+    // The state of each cell in the last frame recorded.
+    private final byte[] states;
+    // The cells occupied in the last frame recorded, and their number.
+    private int[] occupied;
+    private int occupiedCount;
+    // The cells occupied in the frame being recorded.
+    private int[] nextOccupied;
+    // The cells changed in the frame being recorded, as a bit set.
+    private final long[] changed;
+    // The frame being recorded, written out whole.
+    private byte[] frame = new byte[1 << 16];
+    // The number of bytes in the frame.
+    private int frameLength;
+    // The step of the last frame recorded, or -1 before the first.
+    private int lastStep = -1;
+
+    /**
+     * Create a recorder writing to a file, replacing any existing file,
+     * with the default keyframe interval.
+     * @param file The file to write.
+     * @param depth The depth of the field recorded.
+     * @param width The width of the field recorded.
+     * @param speciesTable The species in the field.
+     * @throws IOException If the file cannot be created.
+     */
+    public TrajectoryRecorder(Path file, int depth, int width, SpeciesTable speciesTable)
+        throws IOException
+    {
+        this(Files.newOutputStream(file), depth, width, speciesTable, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Create a recorder writing to the given stream.
+     * @param out The destination. It is buffered by the recorder.
+     * @param depth The depth of the field recorded.
+     * @param width The width of the field recorded.
+     * @param speciesTable The species in the field.
+     * @param keyframeInterval The steps between keyframes. Must be positive.
+     * @throws IOException If the header cannot be written.
+     */
+    public TrajectoryRecorder(OutputStream out, int depth, int width, SpeciesTable speciesTable,
+                              int keyframeInterval)
+        throws IOException
+    {
+        if(keyframeInterval <= 0) {
+            throw new IllegalArgumentException("The keyframe interval must be positive");
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.keyframeInterval = keyframeInterval;
+        int cellCount = depth * width;
+        states = new byte[cellCount];
+        occupied = new int[cellCount];
+        nextOccupied = new int[cellCount];
+        changed = new long[(cellCount + 63) >>> 6];
+
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeInt(depth);
+        this.out.writeInt(width);
+        this.out.writeInt(keyframeInterval);
+        this.out.writeInt(speciesTable.size());
+        for(Species species : speciesTable.getAll()) {
+            this.out.writeUTF(species.getKey());
+        }
+    }
+
+    /**
+     * Record the field after a step.
+     * @throws UncheckedIOException If the frame cannot be written.
+     */
+    public void stepCompleted(int step, Field field)
+    {
+        try {
+            if(lastStep < 0 || step <= lastStep || step % keyframeInterval == 0) {
+                writeKeyframe(step, field);
+            }
+            else {
+                writeDelta(step, field);
+            }
+            lastStep = step;
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("The trajectory could not be written", e);
+        }
+    }
+
+    /**
+     * Push the recorded frames to the file when a run ends.
+     * @throws UncheckedIOException If the frames cannot be written.
+     */
+    public void simulationFinished(int step, Field field)
+    {
+        try {
+            out.flush();
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("The trajectory could not be written", e);
+        }
+    }
+
+    /**
+     * Flush and close the recording.
+     * @throws IOException If the frames cannot be written.
+     */
+    public void close() throws IOException
+    {
+        out.close();
+    }
+
+    /**
+     * Return the state byte of a cell's occupant.
+     * @param animal The occupant, or null.
+     * @return Its state byte.
+     */
+    public static int stateOf(Animal animal)
+    {
+        if(animal == null) {
+            return 0;
+        }
+        int state = animal.getSpecies().getCode() + 1;
+        return animal.isAlive() ? state : state | DEAD;
+    }
+
+    /**
+     * Record the whole grid.
+     */
+    private void writeKeyframe(int step, Field field) throws IOException
+    {
+        Arrays.fill(states, (byte) 0);
+        int count = collectOccupied(field);
+        for(int i = 0; i < count; i++) {
+            int cell = nextOccupied[i];
+            states[cell] = (byte) stateOf(field.getAnimalAt(cell));
+        }
+        swapOccupied(count);
+
+        frameLength = 0;
+        put(KEYFRAME);
+        putInt(step);
+        int cellCount = states.length;
+        int cell = 0;
+        while(cell < cellCount) {
+            int empty = 0;
+            while(cell + empty < cellCount && states[cell + empty] == 0) {
+                empty++;
+            }
+            cell += empty;
+            int full = 0;
+            while(cell + full < cellCount && states[cell + full] != 0) {
+                full++;
+            }
+            putVarint(empty);
+            putVarint(full);
+            ensure(full);
+            System.arraycopy(states, cell, frame, frameLength, full);
+            frameLength += full;
+            cell += full;
+        }
+        out.write(frame, 0, frameLength);
+    }
+
+    /**
+     * Record the cells that changed since the last frame: those
+     * occupied now with a different state, and those occupied then
+     * that are now empty. The changed cells are marked in a bit set,
+     * which puts them in cell order without sorting.
+     */
+    private void writeDelta(int step, Field field) throws IOException
+    {
+        int changes = 0;
+        int count = collectOccupied(field);
+        for(int i = 0; i < count; i++) {
+            int cell = nextOccupied[i];
+            byte state = (byte) stateOf(field.getAnimalAt(cell));
+            if(states[cell] != state) {
+                states[cell] = state;
+                changed[cell >>> 6] |= 1L << cell;
+                changes++;
+            }
+        }
+        for(int i = 0; i < occupiedCount; i++) {
+            int cell = occupied[i];
+            if(states[cell] != 0 && field.getAnimalAt(cell) == null) {
+                states[cell] = 0;
+                changed[cell >>> 6] |= 1L << cell;
+                changes++;
+            }
+        }
+        swapOccupied(count);
+
+        frameLength = 0;
+        put(DELTA);
+        putInt(step);
+        putVarint(changes);
+        int previous = 0;
+        for(int word = 0; word < changed.length && changes > 0; word++) {
+            long bits = changed[word];
+            if(bits != 0) {
+                changed[word] = 0;
+                ensure(6 * Long.bitCount(bits));
+                do {
+                    int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    putVarint(cell - previous);
+                    frame[frameLength++] = states[cell];
+                    previous = cell;
+                    bits &= bits - 1;
+                    changes--;
+                } while(bits != 0);
+            }
+        }
+        out.write(frame, 0, frameLength);
+    }
+
+    /**
+     * Copy the cells occupied in the field into nextOccupied.
+     * @return The number of cells occupied.
+     */
+    private int collectOccupied(Field field)
+    {
+        int count = field.getAnimals().size();
+        for(int slot = 0; slot < count; slot++) {
+            nextOccupied[slot] = field.getOccupiedCell(slot);
+        }
+        return count;
+    }
+
+    /**
+     * Make the cells just collected the last frame's occupied cells.
+     */
+    private void swapOccupied(int count)
+    {
+        int[] previous = occupied;
+        occupied = nextOccupied;
+        nextOccupied = previous;
+        occupiedCount = count;
+    }
+
+    /**
+     * Make room for the given number of bytes in the frame.
+     */
+    private void ensure(int bytes)
+    {
+        if(frameLength + bytes > frame.length) {
+            frame = Arrays.copyOf(frame, Math.max(frame.length * 2, frameLength + bytes));
+        }
+    }
+
+    /**
+     * Add a byte to the frame.
+     */
+    private void put(int value)
+    {
+        ensure(1);
+        frame[frameLength++] = (byte) value;
+    }
+
+    /**
+     * Add a big-endian int to the frame.
+     */
+    private void putInt(int value)
+    {
+        ensure(4);
+        frame[frameLength++] = (byte) (value >>> 24);
+        frame[frameLength++] = (byte) (value >>> 16);
+        frame[frameLength++] = (byte) (value >>> 8);
+        frame[frameLength++] = (byte) value;
+    }
+
+    /**
+     * Add an int to the frame as an unsigned LEB128 varint.
+     */
+    private void putVarint(int value)
+    {
+        ensure(5);
+        while((value & ~0x7F) != 0) {
+            frame[frameLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        frame[frameLength++] = (byte) value;
+    }
+}